@@ -0,0 +1,135 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/*
+ * Lexing throughput of the token manager over a large input, read through
+ * JavaCharStream ("java"), AsciiCharStream ("ascii"), or AsciiCharStream on
+ * a memory-mapped copy of the input ("mapped"), and of the hand-written
+ * MiniJavaLexer ("hand"), which must count as many tokens. The input is the
+ * concatenation of the given files, repeated up to the given size. Run each
+ * stream in a JVM of its own, so neither one pollutes the type profile of
+ * the token manager for the other.
+ *
+ * With --padded, the files are made to look generated: indentation four
+ * times as deep, and a comment at the end of every line.
+ *
+ * Usage: java -cp ../src:. LexBench java|ascii|mapped|hand MB [--padded] file1 ... fileN
+ * (see "make bench-lex")
+ */
+
+public class LexBench {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    /* Lex the whole source, and return the number of tokens. */
+    private interface Lexer {
+        int lex(byte[] source) throws IOException;
+    }
+
+    private static ByteBuffer map(byte[] source) throws IOException {
+        Path file = Files.createTempFile("lexbench", ".java");
+        file.toFile().deleteOnExit();
+        Files.write(file, source);
+        try (FileChannel channel = FileChannel.open(file)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, source.length);
+        }
+    }
+
+    private static int lex(MiniJavaParserTokenManager lexer) {
+        int tokens = 0;
+        while (lexer.getNextToken().kind != MiniJavaParserConstants.EOF)
+            tokens++;
+        return tokens;
+    }
+
+    private static void run(String name, byte[] source, Lexer lexer) throws IOException {
+        int tokens = 0;
+        for (int i = 0; i < WARMUP; i++)
+            tokens = lexer.lex(source);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            lexer.lex(source);
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = threads.getCurrentThreadAllocatedBytes() - bytes;
+        }
+
+        System.out.printf("%-16s %8.1f MB/s %8.1f Mtokens/s %8.1f MB allocated"
+                        + "  (%d tokens, best of %d)%n", name,
+                source.length / (best / 1e9) / (1 << 20), tokens / (best / 1e9) / 1e6,
+                allocated / (double) (1 << 20), tokens, RUNS);
+    }
+
+    private static byte[] pad(byte[] file) {
+        StringBuilder padded = new StringBuilder();
+        int number = 1;
+        for (String line : new String(file, StandardCharsets.ISO_8859_1).split("\n", -1)) {
+            int indent = 0;
+            while (indent < line.length() && line.charAt(indent) == ' ')
+                indent++;
+            padded.append(" ".repeat(3 * indent)).append(line)
+                    .append("    // generated from line ").append(number++).append('\n');
+        }
+        return padded.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !args[0].matches("java|ascii|mapped|hand")) {
+            System.err.println("Usage: java LexBench java|ascii|mapped|hand MB [--padded] file1 ... fileN");
+            System.exit(1);
+        }
+
+        boolean padded = args[2].equals("--padded");
+        long size = Long.parseLong(args[1]) << 20;
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        while (input.size() < size) {
+            for (int i = padded ? 3 : 2; i < args.length; i++) {
+                byte[] file = Files.readAllBytes(Path.of(args[i]));
+                input.write(padded ? pad(file) : file);
+            }
+        }
+        byte[] source = input.toByteArray();
+        System.out.printf("Input: %.1f MB%n", source.length / (double) (1 << 20));
+
+        if (args[0].equals("java")) {
+            run("JavaCharStream", source, s ->
+                    lex(new MiniJavaParserTokenManager(new JavaCharStream(new ByteArrayInputStream(s)))));
+        } else if (args[0].equals("ascii")) {
+            run("AsciiCharStream", source, s -> {
+                AsciiCharStream stream = new AsciiCharStream();
+                stream.reset(s);
+                return lex(new AsciiTokenManager(stream));
+            });
+        } else if (args[0].equals("mapped")) {
+            ByteBuffer mapped = map(source);
+            run("mapped", source, s -> {
+                AsciiCharStream stream = new AsciiCharStream();
+                stream.reset(mapped);
+                return lex(new AsciiTokenManager(stream));
+            });
+        } else {
+            MiniJavaLexer lexer = new MiniJavaLexer();
+            run("MiniJavaLexer", source, s -> {
+                lexer.reset(s);
+                int tokens = 0;
+                while (lexer.next() != MiniJavaParserConstants.EOF)
+                    tokens++;
+                return tokens;
+            });
+        }
+    }
+}
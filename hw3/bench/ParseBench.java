@@ -0,0 +1,120 @@
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+
+/*
+ * Parsing throughput and tree size of the JavaCC parser, which builds the
+ * JTB tree ("javacc"), and of the hand-written AstParser, which builds the
+ * flat Ast ("hand"). Every run parses all the given files, but those that
+ * do not parse, as many times as needed to read the given size. The
+ * retained size is the heap held by the trees of one run, after a GC. Run
+ * each parser in a JVM of its own.
+ *
+ * Usage: java -cp ../src:. ParseBench javacc|hand MB file1 ... fileN
+ * (see "make bench-parse")
+ */
+
+public class ParseBench {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    private interface Parser {
+        Object parse(byte[] source) throws Exception;
+    }
+
+    /* Parse every source, and keep the trees if asked to. */
+    private static void parseAll(ArrayList<byte[]> sources, Parser parser,
+                                 ArrayList<Object> trees) throws Exception {
+        for (byte[] source : sources) {
+            Object tree = parser.parse(source);
+            if (trees != null)
+                trees.add(tree);
+        }
+    }
+
+    private static boolean parses(byte[] source) {
+        try {
+            new MiniJavaParser(new ByteArrayInputStream(source)).Goal();
+            return true;
+        } catch (ParseException | TokenMgrError ex) {
+            return false;
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void run(String name, ArrayList<byte[]> sources, long size, Parser parser)
+            throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            parseAll(sources, parser, null);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            parseAll(sources, parser, null);
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = threads.getCurrentThreadAllocatedBytes() - bytes;
+        }
+
+        ArrayList<Object> trees = new ArrayList<>(sources.size());
+        long before = usedHeap();
+        parseAll(sources, parser, trees);
+        long retained = usedHeap() - before;
+
+        System.out.printf("%-10s %8.1f MB/s %8.1f MB allocated %8.1f MB retained"
+                        + "  (%d trees, best of %d)%n", name,
+                size / (best / 1e9) / (1 << 20), allocated / (double) (1 << 20),
+                retained / (double) (1 << 20), trees.size(), RUNS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || !args[0].matches("javacc|hand")) {
+            System.err.println("Usage: java ParseBench javacc|hand MB file1 ... fileN");
+            System.exit(1);
+        }
+
+        ArrayList<byte[]> files = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            byte[] source = Files.readAllBytes(Path.of(args[i]));
+            if (parses(source))
+                files.add(source);
+        }
+        if (files.isEmpty()) {
+            System.err.println("No file parses");
+            System.exit(1);
+        }
+
+        long limit = Long.parseLong(args[1]) << 20;
+        long size = 0;
+        ArrayList<byte[]> sources = new ArrayList<>();
+        while (size < limit) {
+            for (byte[] source : files) {
+                sources.add(source);
+                size += source.length;
+            }
+        }
+        System.out.printf("Input: %.1f MB in %d files%n", size / (double) (1 << 20), sources.size());
+
+        if (args[0].equals("javacc")) {
+            run("JavaCC", sources, size, s ->
+                    new MiniJavaParser(new ByteArrayInputStream(s)).Goal());
+        } else {
+            AstParser parser = new AstParser();
+            run("AstParser", sources, size, s -> parser.parse(ByteBuffer.wrap(s)));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import my_ast.Ast;
+import my_types.SymbolTable;
+import my_visitors.FirstPassVisitor;
+import my_visitors.SecondPassVisitor;
+import my_visitors.ThirdPassVisitor;
+
+
+/*
+ * Time of the first, second and third passes over the trees of the given
+ * programs ("corpus"), and over a generated program whose statements and
+ * expressions nest to the given depth ("nested"): a method whose body is
+ * that many blocks around an assignment of that many nested sums, and which
+ * returns as many nested NOT expressions. And over a generated hierarchy
+ * of the given number of classes, each one extending the previous one
+ * ("hierarchy"): every class adds a field and a method that assigns this
+ * to a variable of the root class, passes it to an inherited method and
+ * uses an inherited field, and overrides a method that returns this as
+ * the root class. Only the programs that go through all three passes are
+ * timed. The corpus and the nested program are visited as many times as it
+ * takes to visit RUN_NODES nodes, the hierarchy once per run. The IR is
+ * written to /dev/null.
+ *
+ * Usage: java -cp ../src:. PassBench DEPTH CLASSES file1 ... fileN
+ * (see "make bench-passes")
+ */
+
+public class PassBench {
+
+    private static final int WARMUP = 10;
+    private static final int RUNS = 10;
+    /* Nodes visited by a run at least, going over the trees again if needed. */
+    private static final long RUN_NODES = 1 << 22;
+
+    private static final FirstPassVisitor collector = new FirstPassVisitor();
+    private static final SecondPassVisitor analyzer = new SecondPassVisitor(null);
+    private static final ThirdPassVisitor generator = new ThirdPassVisitor(null, null);
+    private static FileWriter output;
+
+    /* A pass over a tree, given the classes its first pass collected. */
+    private interface Pass {
+        void run(Ast ast, SymbolTable classes) throws Exception;
+    }
+
+    private static SymbolTable collect(Ast ast) throws Exception {
+        collector.reset();
+        collector.visit(ast);
+        return collector.getClasses();
+    }
+
+    private static void analyze(Ast ast, SymbolTable classes) throws Exception {
+        analyzer.reset(classes);
+        analyzer.visit(ast);
+    }
+
+    private static void generate(Ast ast, SymbolTable classes) throws Exception {
+        generator.reset(classes, output);
+        generator.visit(ast);
+    }
+
+    private static boolean compiles(Ast ast) {
+        try {
+            SymbolTable classes = collect(ast);
+            analyze(ast, classes);
+            generate(ast, classes);
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    private static byte[] nested(int depth) {
+        StringBuilder s = new StringBuilder();
+        s.append("class Main { public static void main(String[] a) { System.out.println(1); } }\n");
+        s.append("class A { int x;\n  public boolean run() {\n    ");
+        s.append("{".repeat(depth)).append(" x = ").append("(".repeat(depth)).append("1");
+        s.append(" + 1)".repeat(depth)).append("; ").append("}".repeat(depth));
+        s.append("\n    return ").append("!".repeat(depth)).append("true;\n  }\n}\n");
+        return s.toString().getBytes();
+    }
+
+    private static byte[] hierarchy(int classes) {
+        StringBuilder s = new StringBuilder();
+        s.append("class Main { public static void main(String[] a) { System.out.println(1); } }\n");
+        s.append("class C0 { int f0;\n  public int m0(C0 x) { return f0; }\n");
+        s.append("  public C0 self() { return this; }\n}\n");
+        for (int i = 1; i < classes; i++) {
+            s.append("class C").append(i).append(" extends C").append(i - 1);
+            s.append(" { int f").append(i).append(";\n");
+            s.append("  public int m").append(i).append("(C0 x) { C0 a; a = this; f");
+            s.append(i).append(" = this.m0(this); return f0; }\n");
+            s.append("  public C0 self() { return this; }\n}\n");
+        }
+        return s.toString().getBytes();
+    }
+
+    private static void run(String name, ArrayList<Ast> trees, ArrayList<SymbolTable> classes,
+                            Pass pass) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            for (int j = 0; j < trees.size(); j++)
+                pass.run(trees.get(j), classes.get(j));
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < trees.size(); j++)
+                pass.run(trees.get(j), classes.get(j));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        long nodes = 0;
+        for (Ast ast : trees)
+            nodes += ast.size();
+        System.out.printf("%-16s %8.1f ms %8.1f Mnodes/s  (%d trees, best of %d)%n", name,
+                best / 1e6, nodes / (best / 1e9) / 1e6, trees.size(), RUNS);
+    }
+
+    private static void runAll(String name, ArrayList<Ast> asts, long runNodes) throws Exception {
+        ArrayList<Ast> trees = new ArrayList<>();
+        ArrayList<SymbolTable> classes = new ArrayList<>();
+        for (long nodes = 0; nodes < runNodes; ) {
+            for (Ast ast : asts) {
+                trees.add(ast);
+                classes.add(collect(ast));
+                nodes += ast.size();
+            }
+        }
+
+        run(name + " first", trees, classes, (ast, c) -> collect(ast));
+        run(name + " second", trees, classes, PassBench::analyze);
+        run(name + " third", trees, classes, PassBench::generate);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java PassBench DEPTH CLASSES file1 ... fileN");
+            System.exit(1);
+        }
+
+        output = new FileWriter("/dev/null");
+        AstParser parser = new AstParser();
+
+        ArrayList<Ast> corpus = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            try {
+                Ast ast = parser.parse(ByteBuffer.wrap(Files.readAllBytes(Path.of(args[i]))));
+                if (compiles(ast))
+                    corpus.add(ast);
+            } catch (Exception | TokenMgrError ex) {
+                /* Skip the programs that do not parse. */
+            }
+        }
+        if (corpus.isEmpty()) {
+            System.err.println("No file compiles");
+            System.exit(1);
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        Ast nested = parser.parse(ByteBuffer.wrap(nested(depth)));
+        if (!compiles(nested)) {
+            System.err.println("The nested program does not compile");
+            System.exit(1);
+        }
+        int classCount = Integer.parseInt(args[1]);
+        Ast hierarchy = parser.parse(ByteBuffer.wrap(hierarchy(classCount)));
+        if (!compiles(hierarchy)) {
+            System.err.println("The hierarchy does not compile");
+            System.exit(1);
+        }
+        System.out.printf("Nesting depth: %d, classes: %d%n", depth, classCount);
+
+        runAll("corpus", corpus, RUN_NODES);
+        ArrayList<Ast> single = new ArrayList<>();
+        single.add(nested);
+        runAll("nested", single, RUN_NODES);
+        single.set(0, hierarchy);
+        runAll("hierarchy", single, 1);
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import my_ast.Ast;
+
+
+/*
+ * Parsing throughput of the hand-written AstParser on one large source,
+ * lexing on the parser thread ("serial") and on a thread of its own
+ * ("pipelined"). The source is generated from the given programs: the main
+ * class of the first one, followed by the other classes of all of them,
+ * repeated up to the given size. Names repeat, so it only parses.
+ *
+ * The pipeline needs two free cores to pay off; on a single one, it only
+ * adds the hand-over of the tokens. The time of the lexer alone ("lexer")
+ * bounds what it can save.
+ *
+ * Usage: java -cp ../src:. PipelineBench MB file1 ... fileN
+ * (see "make bench-pipeline")
+ */
+
+public class PipelineBench {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    /* A run over the source, which returns the number of nodes or tokens. */
+    private interface Pass {
+        int run(ByteBuffer source) throws Exception;
+    }
+
+    /* Text of the main class, then of each other class, of a program. */
+    private static ArrayList<String> split(byte[] source) throws Exception {
+        Ast ast = new AstParser().parse(ByteBuffer.wrap(source));
+        String text = new String(source, "ISO-8859-1");
+        int classes = ast.classes(ast.root());
+
+        ArrayList<String> parts = new ArrayList<>();
+        int from = 0;
+        for (int i = 0; i < ast.length(classes); i++) {
+            int begin = ast.pos(ast.item(classes, i));
+            parts.add(text.substring(from, begin));
+            from = begin;
+        }
+        parts.add(text.substring(from));
+        return parts;
+    }
+
+    private static byte[] generate(ArrayList<byte[]> programs, long size) throws Exception {
+        ArrayList<String> classes = new ArrayList<>();
+        String mainClass = null;
+        for (byte[] program : programs) {
+            ArrayList<String> parts = split(program);
+            if (mainClass == null)
+                mainClass = parts.get(0);
+            classes.addAll(parts.subList(1, parts.size()));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(mainClass.getBytes("ISO-8859-1"));
+        while (out.size() < size) {
+            for (String c : classes)
+                out.write(c.getBytes("ISO-8859-1"));
+        }
+        return out.toByteArray();
+    }
+
+    private static void run(String name, String items, ByteBuffer source, Pass pass)
+            throws Exception {
+        int count = 0;
+        for (int i = 0; i < WARMUP; i++)
+            count = pass.run(source);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            pass.run(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-10s %8.1f MB/s %8.1f ms  (%d %s, best of %d)%n", name,
+                source.remaining() / (best / 1e9) / (1 << 20), best / 1e6, count, items, RUNS);
+    }
+
+    private static int lex(MiniJavaLexer lexer, ByteBuffer source) {
+        lexer.reset(source);
+        int tokens = 0;
+        while (lexer.next() != MiniJavaParserConstants.EOF)
+            tokens++;
+        return tokens;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java PipelineBench MB file1 ... fileN");
+            System.exit(1);
+        }
+
+        ArrayList<byte[]> programs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            byte[] program = Files.readAllBytes(Path.of(args[i]));
+            try {
+                new AstParser().parse(ByteBuffer.wrap(program));
+                programs.add(program);
+            } catch (Exception | TokenMgrError ex) {
+                /* Skip the programs that do not parse. */
+            }
+        }
+        if (programs.isEmpty()) {
+            System.err.println("No file parses");
+            System.exit(1);
+        }
+
+        ByteBuffer source = ByteBuffer.wrap(generate(programs, Long.parseLong(args[0]) << 20));
+        System.out.printf("Input: %.1f MB, %d cores%n", source.remaining() / (double) (1 << 20),
+                Runtime.getRuntime().availableProcessors());
+
+        MiniJavaLexer lexer = new MiniJavaLexer();
+        AstParser parser = new AstParser();
+        run("lexer", "tokens", source, s -> lex(lexer, s));
+        run("serial", "nodes", source, s -> parser.parse(s).size());
+        run("pipelined", "nodes", source, s -> parser.parsePipelined(s).size());
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import my_types.ClassEntry;
+import my_types.Entry;
+import my_types.MethodEntry;
+import my_types.SymbolPool;
+import my_types.SymbolTable;
+import my_types.VarEntry;
+
+
+/*
+ * Cost of the symbol tables of a class with the given number of fields and
+ * as many methods: filling them ("insert"), finding every member and as
+ * many names that are not members ("lookup"), and going over the members in
+ * declaration order ("iterate"), as the offsets and vtables do. SymbolTable
+ * ("table") is measured against the Hashtable it replaced, whose entries
+ * were sorted by ID on every iteration ("hashtable").
+ *
+ * Usage: java -cp ../src:. SymbolBench MEMBERS
+ * (see "make bench-symbols")
+ */
+
+public class SymbolBench {
+
+    private static final int WARMUP = 10;
+    private static final int RUNS = 10;
+    /* Operations of a run at least, going over the members again if needed. */
+    private static final long RUN_OPERATIONS = 1 << 22;
+
+    /* The operations measured, on one implementation of the tables. */
+    private interface Table {
+        void insert(Entry e);
+
+        Entry get(int symbol);
+
+        List<Entry> getEntries();
+    }
+
+    private static final class Current implements Table {
+        private final SymbolTable table = new SymbolTable("bench");
+
+        public void insert(Entry e) {
+            table.insert(e);
+        }
+
+        public Entry get(int symbol) {
+            return table.get(symbol);
+        }
+
+        public List<Entry> getEntries() {
+            return table.getEntries();
+        }
+    }
+
+    private static final class Baseline implements Table {
+        private final Hashtable<Integer, Entry> table = new Hashtable<>();
+
+        public void insert(Entry e) {
+            table.put(e.getSymbol(), e);
+        }
+
+        public Entry get(int symbol) {
+            return table.get(symbol);
+        }
+
+        public List<Entry> getEntries() {
+            ArrayList<Entry> entries = new ArrayList<>(table.values());
+            Collections.sort(entries);
+            return entries;
+        }
+    }
+
+    private interface Operation {
+        /* Run the operation over all members, and return a checksum. */
+        long run(Table fields, Table methods);
+    }
+
+    private static Entry[] fields;
+    private static Entry[] methods;
+    private static int[] misses;
+
+    private static void members(int count) {
+        ClassEntry owner = new ClassEntry(null, 0, "Bench", new SymbolTable("Bench"),
+                new SymbolTable("Bench"));
+        fields = new Entry[count];
+        methods = new Entry[count];
+        misses = new int[count];
+        int id = 1;
+        for (int i = 0; i < count; i++)
+            fields[i] = new VarEntry(owner, id++, "field" + i, i % 2 == 0 ? "int" : "Bench");
+        for (int i = 0; i < count; i++)
+            methods[i] = new MethodEntry(owner, id++, "method" + i, "int",
+                    new SymbolTable("method" + i), new SymbolTable("method" + i));
+        for (int i = 0; i < count; i++)
+            misses[i] = SymbolPool.intern("missing" + i);
+    }
+
+    private static void fill(Table fieldTable, Table methodTable) {
+        for (Entry e : fields)
+            fieldTable.insert(e);
+        for (Entry e : methods)
+            methodTable.insert(e);
+    }
+
+    private static long insert(boolean current) {
+        Table fieldTable = current ? new Current() : new Baseline();
+        Table methodTable = current ? new Current() : new Baseline();
+        fill(fieldTable, methodTable);
+        return fieldTable.get(fields[0].getSymbol()).getId();
+    }
+
+    private static long lookup(Table fieldTable, Table methodTable) {
+        long sum = 0;
+        for (Entry e : fields)
+            sum += fieldTable.get(e.getSymbol()).getId();
+        for (Entry e : methods)
+            sum += methodTable.get(e.getSymbol()).getId();
+        for (int symbol : misses) {
+            if (fieldTable.get(symbol) != null || methodTable.get(symbol) != null)
+                sum++;
+        }
+        return sum;
+    }
+
+    private static long iterate(Table fieldTable, Table methodTable) {
+        long sum = 0;
+        for (Entry e : fieldTable.getEntries())
+            sum += e.getId();
+        for (Entry e : methodTable.getEntries())
+            sum += e.getId();
+        return sum;
+    }
+
+    private static void run(String name, boolean current, int operations, Operation operation) {
+        Table fieldTable = current ? new Current() : new Baseline();
+        Table methodTable = current ? new Current() : new Baseline();
+        fill(fieldTable, methodTable);
+
+        long repeat = Math.max(1, RUN_OPERATIONS / operations);
+        long sum = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            for (long j = 0; j < repeat; j++)
+                sum += operation.run(fieldTable, methodTable);
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            for (long j = 0; j < repeat; j++)
+                sum += operation.run(fieldTable, methodTable);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-20s %8.2f ns/member  (checksum %d, best of %d)%n", name,
+                best / (double) (repeat * operations), sum % 1000, RUNS);
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java SymbolBench MEMBERS");
+            System.exit(1);
+        }
+
+        int count = Integer.parseInt(args[0]);
+        members(count);
+        System.out.printf("Fields: %d, methods: %d%n", count, count);
+
+        for (boolean current : new boolean[] {false, true}) {
+            String table = current ? "table" : "hashtable";
+            run(table + " insert", current, 2 * count, (f, m) -> insert(current));
+            run(table + " lookup", current, 4 * count, SymbolBench::lookup);
+            run(table + " iterate", current, 2 * count, SymbolBench::iterate);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+#!/bin/bash
+#  Startup benchmark: compile every file of test/course/correct in a JVM of
+#  its own, from the class files with the default JDK archive (before), and
+#  from the jar and AppCDS archive of "make cds" (after), with the default
+#  JVM options and with those of the src/minijava launcher.
+#  Usage: bench/startup.sh [runs]
+
+HW3=$(cd "$(dirname "$0")/.." && pwd)
+SRC=$HW3/src
+RUNS=${1:-3}
+FILES=$(ls "$HW3"/test/course/correct/*.java)
+LAUNCHER_OPTS="-XX:TieredStopAtLevel=1 -XX:+UseSerialGC"
+
+if [ ! -f "$SRC/minijava.jsa" ]; then
+    echo "No archive in $SRC, run \"make cds\" first" >&2
+    exit 1
+fi
+
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+cd "$OUT"
+
+# Time RUNS passes over the files with the given JVM options, in ms per file.
+run() {
+    local start end n=0
+    start=$(date +%s%N)
+    for r in $(seq "$RUNS"); do
+        for f in $FILES; do
+            java "$@" Main --no-daemon "$f" > /dev/null 2>&1
+            n=$((n + 1))
+        done
+    done
+    end=$(date +%s%N)
+    echo "$(( (end - start) / n / 1000000 )) ms/file over $n runs"
+}
+
+APPCDS="-XX:SharedArchiveFile=$SRC/minijava.jsa -Xlog:cds=off -cp $SRC/minijava.jar"
+
+echo "before:           $(run -cp "$SRC")"
+echo "AppCDS:           $(run $APPCDS)"
+echo "AppCDS, launcher: $(run $APPCDS $LAUNCHER_OPTS)"
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/*
+ * Character stream for the token manager that reads plain ASCII sources
+ * directly from a byte buffer, e.g. a memory-mapped file, without the
+ * Unicode escape handling and buffer copies of JavaCharStream.
+ *
+ * Only sources without Unicode escapes and non-ASCII bytes can be read this
+ * way. When the stream sees one, it throws Fallback and the file has to be
+ * parsed again through JavaCharStream. Lines and columns are the ones
+ * JavaCharStream reports (tabs of 8 columns), but are only computed when
+ * the token manager asks for them, i.e. once per token.
+ */
+
+public class AsciiCharStream extends JavaCharStream {
+
+    /* The source needs the escape-aware JavaCharStream. */
+    public static class Fallback extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private Fallback() {
+            super(null, null, false, false);
+        }
+    }
+
+    static final Fallback FALLBACK = new Fallback();
+    private static final int TAB_SIZE = 8;
+
+    private ByteBuffer buffer;
+    /* The array of buffer, if any, which is faster to read. */
+    private byte[] data;
+    /* Copy of an image of a source without array. */
+    private byte[] scratch = new byte[256];
+    private int limit;
+    /* Last character read, and first character of the current token. */
+    private int pos;
+    private int begin;
+
+    /*
+     * Line and column after the characters up to markIdx (just before the
+     * current token), and up to curIdx.
+     */
+    private int markIdx, markLine, markColumn;
+    private boolean markCR, markLF;
+    private int curIdx, curLine, curColumn;
+    private boolean curCR, curLF;
+
+    public AsciiCharStream() {
+        super(new StringReader(""), 1, 1, 1);
+        reset(new byte[0]);
+    }
+
+    public void reset(byte[] source) {
+        reset(ByteBuffer.wrap(source));
+    }
+
+    /* Read the given source next, from its position to its limit. */
+    public void reset(ByteBuffer source) {
+        buffer = source;
+        data = source.hasArray() && source.arrayOffset() == 0 ? source.array() : null;
+        limit = source.limit();
+        pos = source.position() - 1;
+        begin = pos + 1;
+        markIdx = curIdx = pos;
+        markLine = curLine = 1;
+        markColumn = curColumn = 0;
+        markCR = curCR = markLF = curLF = false;
+    }
+
+    /* Drop the reference to the source. */
+    public void release() {
+        reset(new byte[0]);
+    }
+
+    private byte byteAt(int i) {
+        return data != null ? data[i] : buffer.get(i);
+    }
+
+    private char charAt(int i) {
+        byte b = byteAt(i);
+        if (b < 0)
+            throw FALLBACK;
+        if (b == '\\' && i + 1 < limit && byteAt(i + 1) == 'u')
+            throw FALLBACK;
+        return (char) b;
+    }
+
+    public char BeginToken() throws IOException {
+        if (pos + 1 >= limit) {
+            /* As JavaCharStream: an EOF token is at the last character. */
+            begin = pos;
+            throw new IOException();
+        }
+        begin = ++pos;
+        return charAt(pos);
+    }
+
+    public char readChar() throws IOException {
+        if (pos + 1 >= limit)
+            throw new IOException();
+        return charAt(++pos);
+    }
+
+    public void backup(int amount) {
+        pos -= amount;
+    }
+
+    /*
+     * Compute the line and column of character i, i >= begin. Positions are
+     * only asked for up to the end of a token, so curIdx never passes the
+     * start of the next one, and the state there can be saved on the way.
+     */
+    private void seek(int i) {
+        if (i < curIdx) {
+            curIdx = markIdx;
+            curLine = markLine;
+            curColumn = markColumn;
+            curCR = markCR;
+            curLF = markLF;
+        }
+
+        /* Same as JavaCharStream.UpdateLineColumn(). */
+        while (curIdx < i) {
+            if (curIdx == begin - 1) {
+                markIdx = curIdx;
+                markLine = curLine;
+                markColumn = curColumn;
+                markCR = curCR;
+                markLF = curLF;
+            }
+
+            char c = (char) byteAt(++curIdx);
+            curColumn++;
+
+            if (curLF) {
+                curLF = false;
+                curLine += (curColumn = 1);
+            } else if (curCR) {
+                curCR = false;
+                if (c == '\n')
+                    curLF = true;
+                else
+                    curLine += (curColumn = 1);
+            }
+
+            if (c == '\r') {
+                curCR = true;
+            } else if (c == '\n') {
+                curLF = true;
+            } else if (c == '\t') {
+                curColumn--;
+                curColumn += TAB_SIZE - (curColumn % TAB_SIZE);
+            }
+        }
+    }
+
+    public int getBeginLine() {
+        seek(begin);
+        return curLine;
+    }
+
+    public int getBeginColumn() {
+        seek(begin);
+        return curColumn;
+    }
+
+    public int getEndLine() {
+        seek(pos);
+        return curLine;
+    }
+
+    public int getEndColumn() {
+        seek(pos);
+        return curColumn;
+    }
+
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    public String GetImage() {
+        if (data != null)
+            return new String(data, begin, pos - begin + 1, StandardCharsets.ISO_8859_1);
+
+        int length = pos - begin + 1;
+        if (length > scratch.length)
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+        buffer.get(begin, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /* The source, and the offset and length of the current token in it. */
+    public ByteBuffer getSource() {
+        return buffer;
+    }
+
+    public int getImageOffset() {
+        return begin;
+    }
+
+    public int getImageLength() {
+        return pos - begin + 1;
+    }
+
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        for (int i = 0; i < len; i++)
+            suffix[i] = (char) byteAt(pos - len + 1 + i);
+        return suffix;
+    }
+
+    public void Done() {
+    }
+
+    /*
+     * Move the current token to the given line and column; the positions
+     * of the characters after it follow from there. Only used by token
+     * managers with lexical actions; MiniJava has none.
+     */
+    public void adjustBeginLineColumn(int newLine, int newCol) {
+        seek(begin);
+        curLine = newLine;
+        curColumn = newCol;
+        /* Seeking back within the token starts over from here. */
+        markIdx = curIdx;
+        markLine = curLine;
+        markColumn = curColumn;
+        markCR = curCR;
+        markLF = curLF;
+    }
+}
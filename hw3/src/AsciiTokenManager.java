@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/*
+ * Token manager for an AsciiCharStream. Comments are special tokens, which
+ * the parser skips and the visitors never see, so their images are only
+ * made if asked for (through toString()), from the source.
+ */
+
+public class AsciiTokenManager extends MiniJavaParserTokenManager {
+
+    private static class LazyToken extends Token {
+        private ByteBuffer source;
+        private final int offset;
+        private final int length;
+
+        LazyToken(int kind, ByteBuffer source, int offset, int length) {
+            super(kind, null);
+            this.source = source;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String toString() {
+            if (image == null) {
+                byte[] bytes = new byte[length];
+                source.get(offset, bytes);
+                image = new String(bytes, StandardCharsets.ISO_8859_1);
+                source = null;
+            }
+            return image;
+        }
+    }
+
+    public AsciiTokenManager(AsciiCharStream stream) {
+        super(stream);
+    }
+
+    protected Token jjFillToken() {
+        int kind = jjmatchedKind;
+        if ((jjtoSpecial[kind >> 6] & (1L << (kind & 077))) == 0L)
+            return super.jjFillToken();
+
+        AsciiCharStream stream = (AsciiCharStream) input_stream;
+        Token t = new LazyToken(kind, stream.getSource(), stream.getImageOffset(),
+                stream.getImageLength());
+        t.beginLine = stream.getBeginLine();
+        t.beginColumn = stream.getBeginColumn();
+        t.endLine = stream.getEndLine();
+        t.endColumn = stream.getEndColumn();
+        return t;
+    }
+}
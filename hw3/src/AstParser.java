@@ -0,0 +1,711 @@
+import java.nio.ByteBuffer;
+
+import my_ast.Ast;
+import my_types.SymbolPool;
+
+
+/*
+ * Hand-written recursive-descent parser for the grammar of minijava.jj,
+ * which builds the flat Ast directly from the tokens of a MiniJavaLexer,
+ * without the JTB tree or Token objects. Only the images of identifiers,
+ * interned in the SymbolPool, and of integer literals are ever made. Nodes
+ * keep the offset of their first token.
+ *
+ * The syntactic lookaheads of the grammar are decided the same way with at
+ * most three tokens of lookahead: an Expression parses its first Clause
+ * once, and then looks at the tokens after it, instead of scanning it again
+ * for every alternative. The parser accepts exactly the programs the
+ * JavaCC one does, but its error messages are only approximations: callers
+ * wanting those of the grammar parse failing files again with JavaCC.
+ *
+ * parseDeclarations() skims the statements and return expression of every
+ * method, only matching braces, and leaves them out of the tree: their
+ * syntax is not checked.
+ *
+ * parsePipelined() lexes the source on a thread of its own, which hands
+ * the tokens over through a TokenRing, so that lexing and parsing a large
+ * source overlap.
+ */
+
+public class AstParser implements MiniJavaParserConstants {
+
+    /* Tokens written inline in the grammar, which have no constant. */
+    private static final int COMMA = java.util.Arrays.asList(tokenImage).indexOf("\",\"");
+    private static final int TIMES = java.util.Arrays.asList(tokenImage).indexOf("\"*\"");
+
+    /* Ring capacity of parsePipelined(), in tokens. */
+    private static final int RING_TOKENS = 1 << 14;
+
+    /* Lexer of the source, which also makes the images and positions. */
+    private final MiniJavaLexer lexer = new MiniJavaLexer();
+    private TokenSource tokens = lexer;
+    /* Lexer and ring of parsePipelined(), made on first use. */
+    private MiniJavaLexer producerLexer = null;
+    private TokenRing ring = null;
+    private Ast.Builder builder = new Ast.Builder();
+    /* Whether method bodies are skimmed, see parseDeclarations(). */
+    private boolean skim = false;
+
+    /* Ring of the tokens read ahead: kinds and offsets. */
+    private final int[] kinds = new int[4];
+    private final int[] begins = new int[4];
+    private final int[] ends = new int[4];
+    private int head, count;
+
+    /* States of nested(), and the stack of the rules it is in. */
+    private static final int STATEMENT = 0, BLOCK_ITEM = 1, BLOCK_NEXT = 2, ASSIGN_VALUE = 3,
+            ARRAY_ASSIGN_INDEX = 4, ARRAY_ASSIGN_VALUE = 5, IF_CONDITION = 6, IF_THEN = 7,
+            IF_ELSE = 8, WHILE_CONDITION = 9, WHILE_BODY = 10, PRINT_VALUE = 11,
+            EXPRESSION = 12, EXPRESSION_FIRST = 13, AND_RIGHT = 14, BINARY_RIGHT = 15,
+            ARRAY_LOOKUP_INDEX = 16, CALL_ARGUMENT = 17, CLAUSE = 18, NOT_OPERAND = 19,
+            PRIMARY = 20, NEW_ARRAY_SIZE = 21, BRACKET_INNER = 22;
+    private int[] stack = new int[64];
+    private int stackSize;
+
+    public Ast parse(ByteBuffer source) throws ParseException {
+        lexer.reset(source);
+        head = count = 0;
+        return builder.build(goal());
+    }
+
+    /* Parse the source while a thread of its own lexes it. */
+    public Ast parsePipelined(ByteBuffer source) throws ParseException {
+        if (ring == null) {
+            producerLexer = new MiniJavaLexer();
+            ring = new TokenRing(RING_TOKENS);
+        }
+        lexer.reset(source);
+        producerLexer.reset(source);
+        ring.reset();
+        head = count = 0;
+
+        Thread producer = new Thread(() -> ring.produce(producerLexer), "minijava-lexer");
+        producer.setDaemon(true);
+        producer.start();
+        tokens = ring;
+        try {
+            return builder.build(goal());
+        } finally {
+            tokens = lexer;
+            ring.cancel();
+            joinUninterruptibly(producer);
+            producerLexer.reset(new byte[0]);
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /* Parse the source but for its method bodies, see skipBody(). */
+    public Ast parseDeclarations(ByteBuffer source) throws ParseException {
+        skim = true;
+        try {
+            return parse(source);
+        } finally {
+            skim = false;
+        }
+    }
+
+    /* Drop the source and the nodes of the last file. */
+    public void release() {
+        lexer.reset(new byte[0]);
+        head = count = 0;
+        builder.reset();
+    }
+
+    /* --------------------------------- Tokens --------------------------------- */
+
+    /* Kind of the i-th token ahead, 0 being the current one. */
+    private int la(int i) {
+        while (count <= i) {
+            int slot = (head + count) & 3;
+            kinds[slot] = tokens.next();
+            begins[slot] = tokens.getBegin();
+            ends[slot] = tokens.getEnd();
+            count++;
+        }
+        return kinds[(head + i) & 3];
+    }
+
+    private void consume() {
+        head = (head + 1) & 3;
+        count--;
+    }
+
+    private void expect(int kind) throws ParseException {
+        if (la(0) != kind)
+            throw error();
+        consume();
+    }
+
+    /* Offset of the current token. */
+    private int pos() {
+        la(0);
+        return begins[head];
+    }
+
+    /*
+     * Consume the current token, which must be of the given kind, and return
+     * the name of its image in the tree.
+     */
+    private int name(int kind) throws ParseException {
+        if (la(0) != kind)
+            throw error();
+        int name = builder.name(lexer.getImage(begins[head], ends[head]));
+        consume();
+        return name;
+    }
+
+    /* The current INTEGER_LITERAL, see Ast.literal(). */
+    private int literal() throws ParseException {
+        if (la(0) != INTEGER_LITERAL)
+            throw error();
+        int literal = builder.literal(lexer.getImage(begins[head], ends[head]));
+        consume();
+        return literal;
+    }
+
+    private ParseException error() {
+        la(0);
+        int offset = begins[head];
+        /* Like JavaCC, place the end of the source at its last character. */
+        if (kinds[head] == EOF)
+            offset--;
+        String image = kinds[head] == EOF ? tokenImage[EOF] : lexer.getImage(offset, ends[head]);
+        return new ParseException("Encountered \"" + image + "\" at line "
+                + lexer.getLine(offset) + ", column " + lexer.getColumn(offset) + ".");
+    }
+
+    /* ------------------------------ Declarations ------------------------------ */
+
+    private int goal() throws ParseException {
+        int mainClass = mainClass();
+        int mark = builder.mark();
+        while (la(0) == CLASS)
+            builder.push(typeDeclaration());
+        int classes = builder.list(mark);
+        expect(EOF);
+        return builder.node(Ast.PROGRAM, 0, mainClass, classes);
+    }
+
+    private int mainClass() throws ParseException {
+        int pos = pos();
+        expect(CLASS);
+        int name = name(IDENTIFIER);
+        expect(LBRACE);
+        expect(PUBLIC);
+        expect(STATIC);
+        expect(VOID);
+        expect(MAIN);
+        expect(LPAREN);
+        expect(STRING);
+        expect(LSQPAREN);
+        expect(RSQPAREN);
+        expect(IDENTIFIER);
+        expect(RPAREN);
+        expect(LBRACE);
+
+        int locals = localDeclarations();
+        int body = statements();
+
+        expect(RBRACE);
+        expect(RBRACE);
+        return builder.node(Ast.MAIN_CLASS, pos, name, builder.operands(locals, body));
+    }
+
+    /* "class" Identifier "{", or else a class with "extends". */
+    private int typeDeclaration() throws ParseException {
+        boolean extended = !(la(1) == IDENTIFIER && la(2) == LBRACE);
+
+        int pos = pos();
+        expect(CLASS);
+        int name = name(IDENTIFIER);
+        int superName = Ast.NO_NAME;
+        if (extended) {
+            expect(EXTENDS);
+            superName = name(IDENTIFIER);
+        }
+        expect(LBRACE);
+
+        int mark = builder.mark();
+        while (isTypeStart(la(0)))
+            builder.push(varDeclaration());
+        int fields = builder.list(mark);
+        while (la(0) == PUBLIC)
+            builder.push(methodDeclaration());
+        int methods = builder.list(mark);
+
+        expect(RBRACE);
+        return builder.node(Ast.CLASS, pos, name, builder.operands(superName, fields, methods));
+    }
+
+    private int methodDeclaration() throws ParseException {
+        int pos = pos();
+        expect(PUBLIC);
+        int type = type();
+        int name = name(IDENTIFIER);
+        expect(LPAREN);
+
+        int mark = builder.mark();
+        if (isTypeStart(la(0))) {
+            builder.push(parameter());
+            while (la(0) == COMMA) {
+                consume();
+                builder.push(parameter());
+            }
+        }
+        int params = builder.list(mark);
+        expect(RPAREN);
+        expect(LBRACE);
+
+        int locals = localDeclarations();
+        if (skim) {
+            skipBody();
+            expect(RBRACE);
+            return builder.node(Ast.METHOD, pos, name, builder.skippedBody(type, params, locals));
+        }
+        int body = statements();
+
+        expect(RETURN);
+        int result = expression();
+        expect(SEMICOLON);
+        expect(RBRACE);
+        return builder.node(Ast.METHOD, pos, name,
+                builder.operands(type, params, locals, body, result));
+    }
+
+    /* Consume the tokens up to the closing brace of a method body. */
+    private void skipBody() {
+        int depth = 0;
+        for (int kind = la(0); kind != EOF; kind = la(0)) {
+            if (kind == RBRACE && depth-- == 0)
+                return;
+            if (kind == LBRACE)
+                depth++;
+            consume();
+        }
+    }
+
+    private int parameter() throws ParseException {
+        int pos = pos();
+        int type = type();
+        return builder.node(Ast.VAR, pos, name(IDENTIFIER), type);
+    }
+
+    private boolean isTypeStart(int kind) {
+        return kind == INTEGER || kind == BOOLEAN || kind == IDENTIFIER;
+    }
+
+    /*
+     * LOOKAHEAD(2) of a VarDeclaration: "int [" is taken for an array type,
+     * as the scan stops after two tokens.
+     */
+    private boolean isLocalDeclaration() {
+        int first = la(0);
+        if (first == INTEGER)
+            return la(1) == LSQPAREN || la(1) == IDENTIFIER;
+        return (first == BOOLEAN || first == IDENTIFIER) && la(1) == IDENTIFIER;
+    }
+
+    private int localDeclarations() throws ParseException {
+        int mark = builder.mark();
+        while (isLocalDeclaration())
+            builder.push(varDeclaration());
+        return builder.list(mark);
+    }
+
+    private int varDeclaration() throws ParseException {
+        int pos = pos();
+        int type = type();
+        int name = name(IDENTIFIER);
+        expect(SEMICOLON);
+        return builder.node(Ast.VAR, pos, name, type);
+    }
+
+    private int type() throws ParseException {
+        switch (la(0)) {
+            case INTEGER:
+                if (la(1) == LSQPAREN && la(2) == RSQPAREN) {
+                    consume();
+                    consume();
+                    consume();
+                    return SymbolPool.INT_ARRAY;
+                }
+                consume();
+                return SymbolPool.INT;
+            case BOOLEAN:
+                consume();
+                return SymbolPool.BOOLEAN;
+            case IDENTIFIER:
+                return name(IDENTIFIER);
+            default:
+                throw error();
+        }
+    }
+
+    /* ------------------------------- Statements ------------------------------- */
+
+    private int statements() throws ParseException {
+        int mark = builder.mark();
+        while (isStatementStart(la(0)))
+            builder.push(statement());
+        return builder.list(mark);
+    }
+
+    private boolean isStatementStart(int kind) {
+        return kind == LBRACE || kind == IDENTIFIER || kind == IF || kind == WHILE || kind == PRINT;
+    }
+
+    private int statement() throws ParseException {
+        return nested(STATEMENT);
+    }
+
+    /* ------------------------------- Expressions ------------------------------ */
+
+    private int expression() throws ParseException {
+        return nested(EXPRESSION);
+    }
+
+    private boolean isExpressionStart(int kind) {
+        return kind == NOT || kind == INTEGER_LITERAL || kind == TRUE || kind == FALSE
+                || kind == IDENTIFIER || kind == THIS || kind == NEW || kind == LPAREN;
+    }
+
+    /* ----------------------------- Nested parsing ----------------------------- */
+
+    /*
+     * Statements and expressions nest as deep as the source does, so they
+     * are not parsed recursively but by a loop over the states below, with
+     * a stack of its own. A rule starts in the state of its name and ends
+     * with the node it made: the loop then goes on with the state on top of
+     * the stack, the rest of the rule that started it. Each state pushes the
+     * operands the rest of its rule needs before it.
+     *
+     * Every alternative of Expression but the last starts with a Clause, or
+     * a PrimaryExpression, which is what the tokens after it tell apart. A
+     * Clause is a NotExpression when its last rule to end was NOT_OPERAND;
+     * the kind of its node can't tell, as "(!b)" is a NOT node too.
+     */
+    private int nested(int rule) throws ParseException {
+        stackSize = 0;
+        int state = rule;
+        int node = 0;
+        /* The last state to end a rule. */
+        int ended = -1;
+
+        while (true) {
+            switch (state) {
+                case STATEMENT: {
+                    int pos = pos();
+                    switch (la(0)) {
+                        case LBRACE:
+                            consume();
+                            push(pos);
+                            push(builder.mark());
+                            state = BLOCK_NEXT;
+                            continue;
+                        case IDENTIFIER:
+                            if (la(1) == ASSIGN) {
+                                push(pos);
+                                push(name(IDENTIFIER));
+                                consume();
+                                push(ASSIGN_VALUE);
+                                state = EXPRESSION;
+                                continue;
+                            }
+                            if (la(1) == LSQPAREN) {
+                                push(pos);
+                                push(name(IDENTIFIER));
+                                consume();
+                                push(ARRAY_ASSIGN_INDEX);
+                                state = EXPRESSION;
+                                continue;
+                            }
+                            throw error();
+                        case IF:
+                            consume();
+                            expect(LPAREN);
+                            push(pos);
+                            push(IF_CONDITION);
+                            state = EXPRESSION;
+                            continue;
+                        case WHILE:
+                            consume();
+                            expect(LPAREN);
+                            push(pos);
+                            push(WHILE_CONDITION);
+                            state = EXPRESSION;
+                            continue;
+                        case PRINT:
+                            consume();
+                            expect(LPAREN);
+                            push(pos);
+                            push(PRINT_VALUE);
+                            state = EXPRESSION;
+                            continue;
+                        default:
+                            throw error();
+                    }
+                }
+                case BLOCK_ITEM:
+                    /* Then the next statement, if any. */
+                    builder.push(node);
+                    state = BLOCK_NEXT;
+                    continue;
+                case BLOCK_NEXT:
+                    if (isStatementStart(la(0))) {
+                        push(BLOCK_ITEM);
+                        state = STATEMENT;
+                        continue;
+                    }
+                    int body = builder.list(pop());
+                    expect(RBRACE);
+                    node = builder.node(Ast.BLOCK, pop(), body);
+                    break;
+                case ASSIGN_VALUE: {
+                    expect(SEMICOLON);
+                    int name = pop();
+                    node = builder.node(Ast.ASSIGN, pop(), name, node);
+                    break;
+                }
+                case ARRAY_ASSIGN_INDEX:
+                    expect(RSQPAREN);
+                    expect(ASSIGN);
+                    push(node);
+                    push(ARRAY_ASSIGN_VALUE);
+                    state = EXPRESSION;
+                    continue;
+                case ARRAY_ASSIGN_VALUE: {
+                    expect(SEMICOLON);
+                    int index = pop();
+                    int name = pop();
+                    node = builder.node(Ast.ARRAY_ASSIGN, pop(), name, index, node);
+                    break;
+                }
+                case IF_CONDITION:
+                    expect(RPAREN);
+                    push(node);
+                    push(IF_THEN);
+                    state = STATEMENT;
+                    continue;
+                case IF_THEN:
+                    expect(ELSE);
+                    push(node);
+                    push(IF_ELSE);
+                    state = STATEMENT;
+                    continue;
+                case IF_ELSE: {
+                    int thenStmt = pop();
+                    int condition = pop();
+                    node = builder.node(Ast.IF, pop(), condition, thenStmt, node);
+                    break;
+                }
+                case WHILE_CONDITION:
+                    expect(RPAREN);
+                    push(node);
+                    push(WHILE_BODY);
+                    state = STATEMENT;
+                    continue;
+                case WHILE_BODY: {
+                    int condition = pop();
+                    node = builder.node(Ast.WHILE, pop(), condition, node);
+                    break;
+                }
+                case PRINT_VALUE:
+                    expect(RPAREN);
+                    expect(SEMICOLON);
+                    node = builder.node(Ast.PRINT, pop(), node);
+                    break;
+
+                case EXPRESSION:
+                    push(pos());
+                    push(EXPRESSION_FIRST);
+                    state = CLAUSE;
+                    continue;
+                case EXPRESSION_FIRST: {
+                    int pos = pop();
+                    int first = node;
+                    int next = la(0);
+
+                    if (next == AND) {
+                        consume();
+                        push(pos);
+                        push(first);
+                        push(AND_RIGHT);
+                        state = CLAUSE;
+                        continue;
+                    }
+                    if (ended == NOT_OPERAND)
+                        break;
+
+                    if (next == LT || next == PLUS || next == MINUS || next == TIMES) {
+                        consume();
+                        push(pos);
+                        push(first);
+                        push(next == LT ? Ast.LESS : next == PLUS ? Ast.PLUS
+                                : next == MINUS ? Ast.MINUS : Ast.TIMES);
+                        push(BINARY_RIGHT);
+                        state = PRIMARY;
+                        continue;
+                    } else if (next == LSQPAREN) {
+                        consume();
+                        push(pos);
+                        push(first);
+                        push(ARRAY_LOOKUP_INDEX);
+                        state = PRIMARY;
+                        continue;
+                    } else if (next == DOT && la(1) == LENGTH) {
+                        consume();
+                        consume();
+                        node = builder.node(Ast.ARRAY_LENGTH, pos, first);
+                    } else if (next == DOT && la(1) == IDENTIFIER && la(2) == LPAREN) {
+                        consume();
+                        push(pos);
+                        push(first);
+                        push(name(IDENTIFIER));
+                        consume();
+                        push(builder.mark());
+                        if (isExpressionStart(la(0))) {
+                            push(CALL_ARGUMENT);
+                            state = EXPRESSION;
+                            continue;
+                        }
+                        node = call();
+                    }
+                    break;
+                }
+                case AND_RIGHT: {
+                    int first = pop();
+                    node = builder.node(Ast.AND, pop(), first, node);
+                    break;
+                }
+                case BINARY_RIGHT: {
+                    int kind = pop();
+                    int first = pop();
+                    node = builder.node((byte) kind, pop(), first, node);
+                    break;
+                }
+                case ARRAY_LOOKUP_INDEX: {
+                    expect(RSQPAREN);
+                    int first = pop();
+                    node = builder.node(Ast.ARRAY_LOOKUP, pop(), first, node);
+                    break;
+                }
+                case CALL_ARGUMENT:
+                    builder.push(node);
+                    if (la(0) == COMMA) {
+                        consume();
+                        push(CALL_ARGUMENT);
+                        state = EXPRESSION;
+                        continue;
+                    }
+                    node = call();
+                    break;
+
+                case CLAUSE:
+                    if (la(0) == NOT) {
+                        push(pos());
+                        consume();
+                        push(NOT_OPERAND);
+                        continue;
+                    }
+                    state = PRIMARY;
+                    continue;
+                case NOT_OPERAND:
+                    node = builder.node(Ast.NOT, pop(), node);
+                    break;
+
+                case PRIMARY: {
+                    int pos = pos();
+                    switch (la(0)) {
+                        case INTEGER_LITERAL:
+                            node = builder.node(Ast.INT_LITERAL, pos, literal());
+                            break;
+                        case TRUE:
+                            consume();
+                            node = builder.node(Ast.TRUE, pos);
+                            break;
+                        case FALSE:
+                            consume();
+                            node = builder.node(Ast.FALSE, pos);
+                            break;
+                        case IDENTIFIER:
+                            node = builder.node(Ast.IDENT, pos, name(IDENTIFIER));
+                            break;
+                        case THIS:
+                            consume();
+                            node = builder.node(Ast.THIS, pos);
+                            break;
+                        case NEW:
+                            if (la(1) == INTEGER && la(2) == LSQPAREN) {
+                                consume();
+                                consume();
+                                consume();
+                                push(pos);
+                                push(NEW_ARRAY_SIZE);
+                                state = EXPRESSION;
+                                continue;
+                            }
+                            consume();
+                            int className = name(IDENTIFIER);
+                            expect(LPAREN);
+                            expect(RPAREN);
+                            node = builder.node(Ast.NEW_OBJECT, pos, className);
+                            break;
+                        case LPAREN:
+                            consume();
+                            push(BRACKET_INNER);
+                            state = EXPRESSION;
+                            continue;
+                        default:
+                            throw error();
+                    }
+                    break;
+                }
+                case NEW_ARRAY_SIZE:
+                    expect(RSQPAREN);
+                    node = builder.node(Ast.NEW_ARRAY, pop(), node);
+                    break;
+                case BRACKET_INNER:
+                    expect(RPAREN);
+                    break;
+            }
+
+            /* The rule is done: go back to the one that started it. */
+            if (stackSize == 0)
+                return node;
+            ended = state;
+            state = pop();
+        }
+    }
+
+    /* The CALL whose position, object, method and argument mark are on the stack. */
+    private int call() throws ParseException {
+        int args = builder.list(pop());
+        expect(RPAREN);
+        int method = pop();
+        int first = pop();
+        return builder.node(Ast.CALL, pop(), method, builder.operands(first, args));
+    }
+
+    private void push(int value) {
+        if (stackSize == stack.length)
+            stack = java.util.Arrays.copyOf(stack, stackSize * 2);
+        stack[stackSize++] = value;
+    }
+
+    private int pop() {
+        return stack[--stackSize];
+    }
+}
@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/*
+ * Number of files of a batch per CompileJob status. Summaries of the
+ * shards of a batch are exchanged through files, one "STATUS=count" pair
+ * per line, and merged by the parent.
+ */
+
+public class BatchSummary {
+
+    private final int[] counts = new int[CompileJob.Status.values().length];
+
+    public synchronized void add(CompileJob.Status status) {
+        counts[status.ordinal()]++;
+    }
+
+    public synchronized void add(CompileJob.Status status, int files) {
+        counts[status.ordinal()] += files;
+    }
+
+    public synchronized void merge(BatchSummary other) {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+    }
+
+    public synchronized int getCount(CompileJob.Status status) {
+        return counts[status.ordinal()];
+    }
+
+    public synchronized int getFiles() {
+        int files = 0;
+        for (int count : counts)
+            files += count;
+        return files;
+    }
+
+    public synchronized void write(Path path) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (CompileJob.Status status : CompileJob.Status.values())
+            sb.append(status.name()).append('=').append(counts[status.ordinal()]).append('\n');
+        Files.writeString(path, sb);
+    }
+
+    public static BatchSummary read(Path path) throws IOException {
+        BatchSummary summary = new BatchSummary();
+        for (String line : Files.readAllLines(path)) {
+            int eq = line.indexOf('=');
+            if (eq < 0)
+                continue;
+            try {
+                CompileJob.Status status = CompileJob.Status.valueOf(line.substring(0, eq));
+                summary.counts[status.ordinal()] += Integer.parseInt(line.substring(eq + 1));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Malformed summary line '" + line + "' in " + path);
+            }
+        }
+        return summary;
+    }
+
+    public synchronized String toString() {
+        return "Summary: " + getFiles() + " files, "
+                + getCount(CompileJob.Status.OK) + " successful, "
+                + getCount(CompileJob.Status.PARSE_ERROR) + " parse errors, "
+                + getCount(CompileJob.Status.SEMANTIC_ERROR) + " semantic errors, "
+                + getCount(CompileJob.Status.ERROR) + " other errors";
+    }
+}
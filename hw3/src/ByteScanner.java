@@ -0,0 +1,86 @@
+import java.nio.ByteBuffer;
+
+
+/*
+ * Scans of the runs of bytes MiniJavaLexer skips: whitespace, and the
+ * bodies of comments. Each scan returns the offset of the first byte in
+ * [from, to) that ends the run, or to; non-ASCII bytes always end a run,
+ * so that the lexer sees them.
+ *
+ * This is the scalar version. get() returns VectorByteScanner instead when
+ * the JVM runs with --add-modules jdk.incubator.vector, which is only worth
+ * it with C2 (not with the -XX:TieredStopAtLevel=1 of ./minijava).
+ * VectorByteScanner is loaded by name, so that the rest of the compiler
+ * builds and runs without the incubator module.
+ */
+
+public class ByteScanner {
+
+    private static final ByteScanner INSTANCE = load();
+
+    private static ByteScanner load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (ByteScanner) Class.forName("VectorByteScanner")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                /* Not compiled, or no vector support: stay scalar. */
+            }
+        }
+        return new ByteScanner();
+    }
+
+    public static ByteScanner get() {
+        return INSTANCE;
+    }
+
+    protected static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    /* End of a line comment: a line terminator, or an escape. */
+    protected static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r' || b == '\\' || b < 0;
+    }
+
+    /* Candidate end of a block comment: a star, or an escape. */
+    protected static boolean isStar(byte b) {
+        return b == '*' || b == '\\' || b < 0;
+    }
+
+    public int skipSpaces(byte[] data, int from, int to) {
+        while (from < to && isSpace(data[from]))
+            from++;
+        return from;
+    }
+
+    public int skipSpaces(ByteBuffer buffer, int from, int to) {
+        while (from < to && isSpace(buffer.get(from)))
+            from++;
+        return from;
+    }
+
+    public int findLineEnd(byte[] data, int from, int to) {
+        while (from < to && !isLineEnd(data[from]))
+            from++;
+        return from;
+    }
+
+    public int findLineEnd(ByteBuffer buffer, int from, int to) {
+        while (from < to && !isLineEnd(buffer.get(from)))
+            from++;
+        return from;
+    }
+
+    public int findStar(byte[] data, int from, int to) {
+        while (from < to && !isStar(data[from]))
+            from++;
+        return from;
+    }
+
+    public int findStar(ByteBuffer buffer, int from, int to) {
+        while (from < to && !isStar(buffer.get(from)))
+            from++;
+        return from;
+    }
+}
@@ -0,0 +1,35 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+
+/*
+ * Runs buffered CompileJobs on a worker pool and hands every finished job
+ * to the consumer in submission order. Jobs are removed from the list (set
+ * to null) once consumed, so their reports can be collected.
+ */
+
+public class CompileBatch {
+
+    public static void run(List<CompileJob> jobs, ExecutorService pool,
+                           Consumer<CompileJob> done) throws InterruptedException {
+        ArrayList<Future<?>> futures = new ArrayList<>();
+
+        for (CompileJob job : jobs)
+            futures.add(pool.submit(job));
+
+        for (int i = 0; i < jobs.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException ex) {
+                jobs.get(i).fail(ex.getCause());
+            }
+            done.accept(jobs.get(i));
+            jobs.set(i, null);
+            futures.set(i, null);
+        }
+    }
+}
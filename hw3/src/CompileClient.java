@@ -0,0 +1,126 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import my_types.FileHandler;
+
+
+/*
+ * Thin client of CompileServer. Forwards the input files of this invocation
+ * and prints the report blocks the server sends back.
+ */
+
+public class CompileClient {
+
+    private static SocketChannel connect(Path socketPath) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        return channel;
+    }
+
+    public static boolean isRunning(Path socketPath) {
+        if (!Files.exists(socketPath) || !CompileServer.isPrivate(socketPath))
+            return false;
+
+        try {
+            connect(socketPath).close();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /*
+     * Compile the files on the server. Returns false, without printing
+     * anything, if no compatible server is listening on socketPath, or if
+     * it runs another build of the compiler.
+     */
+    public static boolean compile(Path socketPath, List<String> files) {
+        int printed = 0;
+
+        if (!Files.exists(socketPath) || !CompileServer.isPrivate(socketPath))
+            return false;
+
+        byte[] fingerprint;
+        try {
+            fingerprint = IRCache.getFingerprint();
+        } catch (IllegalStateException ex) {
+            return false;
+        }
+
+        try (SocketChannel channel = connect(socketPath);
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+            out.writeInt(CompileServer.PROTOCOL_VERSION);
+            out.writeInt(CompileServer.COMPILE);
+            out.writeInt(fingerprint.length);
+            out.write(fingerprint);
+            out.writeInt(files.size());
+            for (String file : files) {
+                /* The server runs in another directory: send absolute paths. */
+                String llvmPath = "";
+                if (file.lastIndexOf('.') > file.lastIndexOf('/')) {
+                    FileHandler fh = new FileHandler(0, file);
+                    llvmPath = Path.of(fh.getFileName() + ".ll").toAbsolutePath().toString();
+                }
+                out.writeUTF(Path.of(file).toAbsolutePath().toString());
+                out.writeUTF(llvmPath);
+            }
+            out.flush();
+
+            if (in.readInt() != CompileServer.PROTOCOL_VERSION || !in.readBoolean())
+                return false;
+
+            for (int i = 0; i < files.size(); i++) {
+                in.readUTF();   /* Status, only the report is printed. */
+                byte[] stdout = in.readNBytes(in.readInt());
+                byte[] stderr = in.readNBytes(in.readInt());
+                System.out.write(stdout, 0, stdout.length);
+                System.out.flush();
+                System.err.write(stderr, 0, stderr.length);
+                System.err.flush();
+                printed++;
+            }
+            return true;
+        } catch (IOException ex) {
+            if (printed == 0)
+                return false;
+            /* Part of the reports is already out, don't compile them again. */
+            System.err.println("Lost connection to compile server: " + ex.getMessage());
+            return true;
+        }
+    }
+
+    public static boolean shutdown(Path socketPath) {
+        if (!CompileServer.isPrivate(socketPath))
+            return false;
+
+        try (SocketChannel channel = connect(socketPath);
+             DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+            out.writeInt(CompileServer.PROTOCOL_VERSION);
+            out.writeInt(CompileServer.SHUTDOWN);
+            out.flush();
+            return in.readInt() == CompileServer.PROTOCOL_VERSION;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import my_events.FileCompileEvent;
+import my_events.PassEvent;
+import my_types.FileHandler;
+import my_types.SymbolTable;
+import my_ast.Ast;
+import my_types.SemanticException;
+import my_visitors.*;
+
+
+/*
+ * Compiles a single MiniJava file: parse, three passes and LLVM IR file.
+ * The report block of the file is written to the given streams, or to
+ * internal buffers, so that jobs running on a worker pool can be printed
+ * later in argument order.
+ */
+
+public class CompileJob implements Runnable {
+
+    public enum Status {
+        OK, PARSE_ERROR, SEMANTIC_ERROR, ERROR
+    }
+
+    private final int id;
+    private final String filePath;
+    private final String llvmPath;
+    private final boolean buffered;
+    private PrintStream out;
+    private PrintStream err;
+    private ByteArrayOutputStream outBuf = null;
+    private ByteArrayOutputStream errBuf = null;
+    private IRCache cache = null;
+    private CompileStats stats = null;
+    private boolean cacheHit = false;
+    private boolean quiet = false;
+    private CompileSession.Parser parser = CompileSession.Parser.JAVACC;
+    private boolean declarationsOnly = false;
+    private Status status = Status.ERROR;
+
+    /* Report directly to the given streams. */
+    public CompileJob(int id, String filePath, String llvmPath, PrintStream out,
+                      PrintStream err) {
+        this.id = id;
+        this.filePath = filePath;
+        this.llvmPath = llvmPath;
+        this.out = out;
+        this.err = err;
+        this.buffered = false;
+    }
+
+    /*
+     * Report to internal buffers, see getOutput() and getErrors(). They are
+     * allocated when the job runs, so that long batches of pending jobs
+     * stay small.
+     */
+    public CompileJob(int id, String filePath, String llvmPath) {
+        this.id = id;
+        this.filePath = filePath;
+        this.llvmPath = llvmPath;
+        this.buffered = true;
+    }
+
+    private void openBuffers() {
+        if (!buffered || outBuf != null)
+            return;
+        outBuf = new ByteArrayOutputStream();
+        errBuf = new ByteArrayOutputStream();
+        out = new PrintStream(outBuf, true);
+        err = new PrintStream(errBuf, true);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /* Serve and store results through the given cache, if not null. */
+    public void setCache(IRCache cache) {
+        this.cache = cache;
+    }
+
+    /* Measure every phase of the file, if not null. */
+    public void setStats(CompileStats stats) {
+        this.stats = stats;
+    }
+
+    /* Skip the declarations and offsets of the report. */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    public void setParser(CompileSession.Parser parser) {
+        this.parser = parser;
+    }
+
+    /*
+     * Stop after the first pass, and print the declarations and offsets.
+     * Method bodies are skimmed, not parsed, so their syntax errors go
+     * unreported.
+     */
+    public void setDeclarationsOnly(boolean declarationsOnly) {
+        this.declarationsOnly = declarationsOnly;
+    }
+
+    public CompileStats getStats() {
+        return stats;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public byte[] getOutput() {
+        return outBuf == null ? new byte[0] : outBuf.toByteArray();
+    }
+
+    public byte[] getErrors() {
+        return errBuf == null ? new byte[0] : errBuf.toByteArray();
+    }
+
+    /* Report an error that escaped run(), e.g. from the worker pool. */
+    public void fail(Throwable t) {
+        openBuffers();
+        status = Status.ERROR;
+        err.println(t.getMessage());
+    }
+
+    public void run() {
+        FileCompileEvent event = new FileCompileEvent();
+        event.begin();
+
+        openBuffers();
+        FileHandler fh = new FileHandler(id, filePath);
+        if (stats != null)
+            stats.start();
+
+        fh.printTitleSep(out);
+
+        if (cache == null)
+            compile(fh, out, null);
+        else
+            compileCached(fh);
+
+        fh.printSep(out);
+        out.println();
+
+        if (stats != null)
+            stats.finish(status);
+
+        if (event.shouldCommit()) {
+            event.file = filePath;
+            event.status = status.name();
+            event.cache = cache == null ? "off" : cacheHit ? "hit" : "miss";
+            event.commit();
+        }
+    }
+
+    private PassEvent beginPass() {
+        PassEvent event = new PassEvent();
+        event.begin();
+        return event;
+    }
+
+    /* End of a phase: charge it in the stats and the JFR recording. */
+    private void endPass(PassEvent event, CompileStats.Phase phase) {
+        if (stats != null)
+            stats.mark(phase);
+
+        if (event.shouldCommit()) {
+            event.file = filePath;
+            event.pass = phase.getKey();
+            event.commit();
+        }
+    }
+
+    private File getLlvmFile(FileHandler fh) {
+        return new File(llvmPath != null ? llvmPath : fh.getFileName() + ".ll");
+    }
+
+    /*
+     * Serve the file from the IR cache, or compile it and store the result.
+     * Files that could not be read, or failed for any reason other than a
+     * parse or semantic error, are never cached.
+     */
+    private void compileCached(FileHandler fh) {
+        ByteBuffer source;
+        try {
+            source = SourceFile.read(filePath);
+        } catch (IOException ex) {
+            compile(fh, out, null);
+            return;
+        }
+
+        String key = cache.key(source, (quiet ? "quiet" : "full")
+                + (declarationsOnly ? "-declarations" : ""));
+        IRCache.Result cached = cache.get(key);
+        if (cached != null) {
+            cacheHit = true;
+            status = cached.getStatus();
+            out.write(cached.getReport(), 0, cached.getReport().length);
+            if (cached.getLlvm() != null) {
+                try {
+                    Files.write(getLlvmFile(fh).toPath(), cached.getLlvm());
+                } catch (IOException ex) {
+                    status = Status.ERROR;
+                    err.println(ex.getMessage());
+                }
+            }
+            out.println("IR cache: hit (" + cache.counters() + ")");
+            if (stats != null)
+                stats.setCache("hit");
+            return;
+        }
+
+        ByteArrayOutputStream reportBuf = new ByteArrayOutputStream();
+        compile(fh, new PrintStream(reportBuf, true), source);
+        byte[] report = reportBuf.toByteArray();
+        out.write(report, 0, report.length);
+
+        if (status != Status.ERROR) {
+            try {
+                byte[] llvm = null;
+                if (status == Status.OK && !declarationsOnly)
+                    llvm = Files.readAllBytes(getLlvmFile(fh).toPath());
+                cache.put(key, new IRCache.Result(status, report, llvm));
+            } catch (IOException ex) {
+                err.println("IR cache: " + ex.getMessage());
+            }
+        }
+        out.println("IR cache: miss (" + cache.counters() + ")");
+        if (stats != null)
+            stats.setCache("miss");
+    }
+
+    /* Run the pipeline on the file, or on its contents if source is given. */
+    private void compile(FileHandler fh, PrintStream out, ByteBuffer source) {
+        CompileSession session = CompileSession.get();
+        FileWriter fw = null;
+        File llvmFile;
+
+        try {
+            if (source == null)
+                source = SourceFile.read(filePath);
+
+            if (stats != null)
+                stats.begin();
+            PassEvent pass = beginPass();
+            Ast root = declarationsOnly ? session.parseDeclarations(source)
+                    : session.parse(source, parser);
+            out.println(declarationsOnly ? "Declarations parsed; method bodies not checked."
+                    : "File parsed successfully.");
+            endPass(pass, CompileStats.Phase.PARSE);
+
+            pass = beginPass();
+            FirstPassVisitor collector = session.getCollector();
+            collector.visit(root);
+            out.println("First pass successful.");
+            endPass(pass, CompileStats.Phase.FIRST_PASS);
+
+            if (declarationsOnly) {
+                if (!quiet) {
+                    pass = beginPass();
+                    collector.printDeclarations(out);
+                    endPass(pass, CompileStats.Phase.DECLARATIONS);
+
+                    pass = beginPass();
+                    collector.printOffsets(out);
+                    endPass(pass, CompileStats.Phase.OFFSETS);
+                }
+                status = Status.OK;
+                return;
+            }
+
+            SymbolTable classes = collector.getClasses();
+
+            pass = beginPass();
+            SecondPassVisitor analyzer = session.getAnalyzer(classes);
+            analyzer.visit(root);
+            out.println("Second pass successful.");
+            endPass(pass, CompileStats.Phase.SECOND_PASS);
+
+            if (!quiet) {
+                /* Print all declarations. */
+                pass = beginPass();
+                collector.printDeclarations(out);
+                endPass(pass, CompileStats.Phase.DECLARATIONS);
+
+                /* Print offsets for every class. */
+                pass = beginPass();
+                collector.printOffsets(out);
+                endPass(pass, CompileStats.Phase.OFFSETS);
+            }
+
+            /* Create LLVM IR file. */
+            pass = beginPass();
+            llvmFile = getLlvmFile(fh);
+            if (llvmFile.exists())
+                llvmFile.delete();
+            llvmFile.createNewFile();
+            fw = new FileWriter(llvmFile);
+
+            ThirdPassVisitor generator = session.getGenerator(classes, fw);
+            generator.visit(root);
+            /* The tree is not needed anymore. */
+            root = null;
+            out.println("IR generated successfully.");
+            endPass(pass, CompileStats.Phase.THIRD_PASS);
+            status = Status.OK;
+
+        } catch (ParseException | TokenMgrError ex) {
+            status = Status.PARSE_ERROR;
+            out.println(ex.getMessage());
+        } catch (SemanticException ex) {
+            status = Status.SEMANTIC_ERROR;
+            out.println(ex.getMessage());
+        } catch (Exception ex) {
+            status = Status.ERROR;
+            err.println(ex.getMessage());
+        } catch (InternalError ex) {
+            /* A memory-mapped source was truncated while being read. */
+            status = Status.ERROR;
+            err.println(ex.getMessage());
+        } catch (StackOverflowError ex) {
+            /* The JavaCC parser and AstBuilder recurse as deep as the source nests. */
+            status = Status.ERROR;
+            err.println(parser == CompileSession.Parser.JAVACC
+                    ? "Statements or expressions nest too deep, try --parser=hand"
+                    : "Statements or expressions nest too deep");
+        } finally {
+            session.release();
+            try {
+                if (fw != null) fw.close();
+            } catch (IOException ex) {
+                status = Status.ERROR;
+                err.println(ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/*
+ * Long-running compile server. Listens on a Unix-domain socket and runs the
+ * compile pipeline for every request in the same (warm) JVM.
+ *
+ * Protocol (DataInput/DataOutput encoding):
+ *   request:  int version, int command,
+ *             [COMPILE] int len, len bytes fingerprint,
+ *                       int n, n x (UTF inputPath, UTF llvmPath)
+ *   response: int version,
+ *             [COMPILE] boolean sameCompiler,
+ *                       n x (UTF status, int len, len bytes stdout,
+ *                                        int len, len bytes stderr)
+ * An empty llvmPath means the default "<file name>.ll". The fingerprint is
+ * that of the class files of the client, see IRCache.getFingerprint(): a
+ * server running another build of the compiler answers false and compiles
+ * nothing.
+ *
+ * The server runs files and writes IR at the paths its clients send, so
+ * only the user running it may connect. The default socket is in a
+ * directory of that user's own, made with mode 0700, and the socket gets
+ * mode 0600. Neither side uses a socket, or a socket directory, owned by
+ * another user, see isPrivate().
+ */
+
+public class CompileServer {
+
+    public static final int PROTOCOL_VERSION = 2;
+    public static final int COMPILE = 1;
+    public static final int SHUTDOWN = 2;
+
+    private final Path socketPath;
+    private final ExecutorService pool;
+    private final IRCache cache;
+    /* Fingerprint of the class files the server was started from. */
+    private byte[] fingerprint;
+    private ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    public CompileServer(Path socketPath, int jobs, IRCache cache) {
+        this.socketPath = socketPath;
+        this.cache = cache;
+        this.pool = Executors.newFixedThreadPool(jobs);
+    }
+
+    /*
+     * $MINIJAVA_SOCKET, or server.sock in $XDG_RUNTIME_DIR/minijava, or in
+     * <tmpdir>/minijava-<user> without a runtime directory.
+     */
+    public static Path defaultSocketPath() {
+        String path = System.getenv("MINIJAVA_SOCKET");
+        if (path != null && !path.isEmpty())
+            return Path.of(path);
+
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        Path dir;
+        if (runtimeDir != null && !runtimeDir.isEmpty() && Files.isDirectory(Path.of(runtimeDir)))
+            dir = Path.of(runtimeDir, "minijava");
+        else
+            dir = Path.of(System.getProperty("java.io.tmpdir"),
+                    "minijava-" + System.getProperty("user.name"));
+        return dir.resolve("server.sock");
+    }
+
+    /* Whether the file is owned by the user running this JVM. */
+    private static boolean isOwn(Path path, boolean orRoot) {
+        try {
+            UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            return owner.equals(user) || (orRoot && owner.getName().equals("root"));
+        } catch (IOException | UnsupportedOperationException ex) {
+            return false;
+        }
+    }
+
+    /*
+     * Whether the socket, and the directory it is in, belong to the user
+     * running this JVM, so that no other user can have made or replaced
+     * it. System directories such as /tmp may belong to root.
+     */
+    public static boolean isPrivate(Path socketPath) {
+        Path dir = socketPath.toAbsolutePath().getParent();
+        return isOwn(socketPath, false) && dir != null && isOwn(dir, true);
+    }
+
+    /* Make the directory of the socket, readable by its user only. */
+    private void makeSocketDir() throws IOException {
+        Path dir = socketPath.toAbsolutePath().getParent();
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(dir.getParent());
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")));
+        } else if (!isOwn(dir, true)) {
+            throw new IOException("Socket directory " + dir + " belongs to another user");
+        }
+    }
+
+    public void serve() throws IOException {
+        makeSocketDir();
+        if (Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) {
+            if (!isPrivate(socketPath))
+                throw new IOException("Socket " + socketPath + " belongs to another user");
+            if (CompileClient.isRunning(socketPath)) {
+                throw new IOException("A compile server is already listening on "
+                        + socketPath);
+            }
+            /* Stale socket of a server that did not exit cleanly. */
+            Files.delete(socketPath);
+        }
+
+        /* Before the class files can be rebuilt under us. */
+        fingerprint = IRCache.getFingerprint();
+
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::deleteSocket));
+        System.err.println("Compile server listening on " + socketPath);
+
+        while (running) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (AsynchronousCloseException ex) {
+                break;
+            }
+
+            Thread handler = new Thread(() -> handle(channel));
+            handler.setDaemon(true);
+            handler.start();
+        }
+
+        pool.shutdown();
+        deleteSocket();
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socketPath);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel;
+             DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+            int version = in.readInt();
+            out.writeInt(PROTOCOL_VERSION);
+            out.flush();
+            if (version != PROTOCOL_VERSION)
+                return;
+
+            int command = in.readInt();
+            if (command == SHUTDOWN) {
+                running = false;
+                server.close();
+                return;
+            }
+
+            byte[] clientFingerprint = in.readNBytes(in.readInt());
+            boolean sameCompiler = Arrays.equals(clientFingerprint, fingerprint);
+            out.writeBoolean(sameCompiler);
+            out.flush();
+            if (!sameCompiler)
+                return;
+
+            ArrayList<CompileJob> jobs = new ArrayList<>();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String filePath = in.readUTF();
+                String llvmPath = in.readUTF();
+                CompileJob job = new CompileJob(i, filePath, llvmPath.isEmpty() ? null : llvmPath);
+                job.setCache(cache);
+                jobs.add(job);
+            }
+
+            CompileBatch.run(jobs, pool, job -> {
+                try {
+                    byte[] stdout = job.getOutput();
+                    byte[] stderr = job.getErrors();
+                    out.writeUTF(job.getStatus().name());
+                    out.writeInt(stdout.length);
+                    out.write(stdout);
+                    out.writeInt(stderr.length);
+                    out.write(stderr);
+                    out.flush();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+        } catch (ClosedChannelException ex) {
+            /* Client went away. */
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Compile server: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+
+import my_ast.Ast;
+import my_types.SymbolTable;
+import my_visitors.AstBuilder;
+import my_visitors.FirstPassVisitor;
+import my_visitors.SecondPassVisitor;
+import my_visitors.ThirdPassVisitor;
+import syntaxtree.Goal;
+
+
+/*
+ * Parser and visitors of one compiler thread, reused for every file the
+ * thread compiles: the parser is re-initialized through ReInit() and the
+ * visitors are reset instead of being allocated again. A session must only
+ * be used by its own thread, see get().
+ *
+ * Sources are lexed through an AsciiCharStream, and parsed again through
+ * the escape-aware JavaCharStream if they turn out to need it. Files with
+ * lexical errors are parsed again too, so that the error is the one
+ * JavaCharStream reports. The JTB tree is then lowered to the flat Ast
+ * the passes run on.
+ *
+ * With the hand-written parser, the AST is built directly. Files it can
+ * not parse, for any reason, go through JavaCC as above, so that errors
+ * are always reported the same way, unless they nest too deep for it. The
+ * pipelined parser is the same, but for sources of PIPELINE_MIN bytes or
+ * more, which are lexed on another thread when there is more than one CPU.
+ * For declarations only, it skims the method bodies, see
+ * AstParser.parseDeclarations().
+ */
+
+public class CompileSession {
+
+    private static final ThreadLocal<CompileSession> sessions =
+            ThreadLocal.withInitial(CompileSession::new);
+
+    /* Parser of the sources, see --parser. */
+    public enum Parser {
+        JAVACC, HAND, PIPELINED
+    }
+
+    /* Smaller sources are not worth a lexer thread. */
+    private static final int PIPELINE_MIN = 1 << 20;
+    /* On a single CPU, the lexer thread only slows parsing down. */
+    private static final boolean MANY_CPUS = Runtime.getRuntime().availableProcessors() > 1;
+
+    private final AsciiCharStream asciiStream = new AsciiCharStream();
+    private final AsciiTokenManager asciiLexer = new AsciiTokenManager(asciiStream);
+    private JavaCharStream escapedStream = null;
+    private MiniJavaParserTokenManager escapedLexer = null;
+    private MiniJavaParser parser = null;
+    private final AstBuilder builder = new AstBuilder();
+    private AstParser handParser = null;
+    private final FirstPassVisitor collector = new FirstPassVisitor();
+    private final SecondPassVisitor analyzer = new SecondPassVisitor(null);
+    private final ThirdPassVisitor generator = new ThirdPassVisitor(null, null);
+
+    private CompileSession() {
+    }
+
+    /* The session of the current thread. */
+    public static CompileSession get() {
+        return sessions.get();
+    }
+
+    public Ast parse(ByteBuffer source, Parser kind) throws Exception {
+        if (kind != Parser.JAVACC) {
+            if (handParser == null)
+                handParser = new AstParser();
+
+            try {
+                if (kind == Parser.PIPELINED && MANY_CPUS
+                        && source.remaining() >= PIPELINE_MIN)
+                    return handParser.parsePipelined(source);
+                return handParser.parse(source);
+            } catch (AsciiCharStream.Fallback | TokenMgrError ex) {
+                /* Parse again with JavaCC. */
+            } catch (ParseException ex) {
+                return parseAgain(source, ex);
+            } finally {
+                handParser.release();
+            }
+        }
+
+        return builder.build(parseGoal(source));
+    }
+
+    /*
+     * A tree without method bodies, or a whole one if the hand-written
+     * parser can not skim the source.
+     */
+    public Ast parseDeclarations(ByteBuffer source) throws Exception {
+        if (handParser == null)
+            handParser = new AstParser();
+
+        try {
+            return handParser.parseDeclarations(source);
+        } catch (AsciiCharStream.Fallback | TokenMgrError ex) {
+            /* Parse again with JavaCC. */
+        } catch (ParseException ex) {
+            return parseAgain(source, ex);
+        } finally {
+            handParser.release();
+        }
+
+        return builder.build(parseGoal(source));
+    }
+
+    /*
+     * Parse a source the hand-written parser rejected with JavaCC, for its
+     * error message. Sources nesting too deep for JavaCC get the error of
+     * the hand-written parser instead.
+     */
+    private Ast parseAgain(ByteBuffer source, ParseException handError) throws Exception {
+        try {
+            return builder.build(parseGoal(source));
+        } catch (StackOverflowError ex) {
+            throw handError;
+        }
+    }
+
+    private Goal parseGoal(ByteBuffer source) throws ParseException {
+        if (parser == null)
+            parser = new MiniJavaParser(asciiLexer);
+
+        try {
+            asciiStream.reset(source);
+            asciiLexer.ReInit(asciiStream);
+            parser.ReInit(asciiLexer);
+            return parser.Goal();
+        } catch (AsciiCharStream.Fallback | TokenMgrError ex) {
+            /* Parse again below. */
+        } finally {
+            asciiStream.release();
+        }
+
+        if (escapedStream == null) {
+            escapedStream = new JavaCharStream(SourceFile.asStream(source));
+            escapedLexer = new MiniJavaParserTokenManager(escapedStream);
+        } else {
+            escapedStream.ReInit(SourceFile.asStream(source));
+            escapedLexer.ReInit(escapedStream);
+        }
+        parser.ReInit(escapedLexer);
+        return parser.Goal();
+    }
+
+    public FirstPassVisitor getCollector() {
+        collector.reset();
+        return collector;
+    }
+
+    public SecondPassVisitor getAnalyzer(SymbolTable classes) {
+        analyzer.reset(classes);
+        return analyzer;
+    }
+
+    public ThirdPassVisitor getGenerator(SymbolTable classes, FileWriter fw) {
+        generator.reset(classes, fw);
+        return generator;
+    }
+
+    /* Drop the tokens, symbol tables and output of the last file. */
+    public void release() {
+        if (parser != null)
+            parser.ReInit(asciiLexer);
+        collector.reset();
+        analyzer.reset(null);
+        generator.reset(null, null);
+    }
+}
@@ -0,0 +1,169 @@
+import java.lang.management.ManagementFactory;
+
+
+/*
+ * Wall time and allocated bytes of every compiler phase of one file.
+ * Allocations are measured through the ThreadMXBean of the thread that
+ * compiles the file, so marks must be made by that thread.
+ */
+
+public class CompileStats {
+
+    public enum Phase {
+        PARSE("parse"), FIRST_PASS("first_pass"), SECOND_PASS("second_pass"),
+        DECLARATIONS("declarations"), OFFSETS("offsets"), THIRD_PASS("third_pass");
+
+        private final String key;
+
+        Phase(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean threads = getThreadMXBean();
+
+    private final int id;
+    private final String filePath;
+    private final long[] wallNanos = new long[Phase.values().length];
+    private final long[] allocBytes = new long[Phase.values().length];
+    private long startNanos, startBytes;
+    private long lastNanos, lastBytes;
+    private long totalNanos, totalBytes;
+    private CompileJob.Status status = CompileJob.Status.ERROR;
+    private String cache = "off";
+
+    public CompileStats(int id, String filePath) {
+        this.id = id;
+        this.filePath = filePath;
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /* Bytes allocated by the current thread so far, or 0 if not supported. */
+    private static long allocated() {
+        return threads != null ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    public void start() {
+        startNanos = lastNanos = System.nanoTime();
+        startBytes = lastBytes = allocated();
+    }
+
+    /* Start measuring a phase, without charging the time since the previous mark. */
+    public void begin() {
+        lastNanos = System.nanoTime();
+        lastBytes = allocated();
+    }
+
+    /* Charge everything since the previous mark to the given phase. */
+    public void mark(Phase phase) {
+        long nanos = System.nanoTime();
+        long bytes = allocated();
+        wallNanos[phase.ordinal()] += nanos - lastNanos;
+        allocBytes[phase.ordinal()] += bytes - lastBytes;
+        lastNanos = nanos;
+        lastBytes = bytes;
+    }
+
+    public void finish(CompileJob.Status status) {
+        this.status = status;
+        totalNanos = System.nanoTime() - startNanos;
+        totalBytes = allocated() - startBytes;
+    }
+
+    public void setCache(String cache) {
+        this.cache = cache;
+    }
+
+    private static String quote(String str) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : str.toCharArray()) {
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    private static void appendPhases(StringBuilder sb, long[] wallNanos, long[] allocBytes) {
+        sb.append("\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0)
+                sb.append(',');
+            sb.append('"').append(phase.getKey()).append("\":{");
+            sb.append("\"wall_ns\":").append(wallNanos[phase.ordinal()]);
+            sb.append(",\"alloc_bytes\":").append(allocBytes[phase.ordinal()]);
+            sb.append('}');
+        }
+        sb.append('}');
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"id\":").append(id);
+        sb.append(",\"file\":").append(quote(filePath));
+        sb.append(",\"status\":").append(quote(status.name()));
+        sb.append(",\"cache\":").append(quote(cache));
+        sb.append(",\"wall_ns\":").append(totalNanos);
+        sb.append(",\"alloc_bytes\":").append(totalBytes);
+        sb.append(',');
+        appendPhases(sb, wallNanos, allocBytes);
+        return sb.append('}').toString();
+    }
+
+    /* Totals over every file of a batch. */
+    public static class Summary {
+        private final long startNanos = System.nanoTime();
+        private final int[] statuses = new int[CompileJob.Status.values().length];
+        private final long[] wallNanos = new long[Phase.values().length];
+        private final long[] allocBytes = new long[Phase.values().length];
+        private int files = 0, cacheHits = 0;
+        private long totalNanos = 0, totalBytes = 0;
+
+        public void add(CompileStats stats) {
+            files++;
+            statuses[stats.status.ordinal()]++;
+            if (stats.cache.equals("hit"))
+                cacheHits++;
+            totalNanos += stats.totalNanos;
+            totalBytes += stats.totalBytes;
+            for (int i = 0; i < wallNanos.length; i++) {
+                wallNanos[i] += stats.wallNanos[i];
+                allocBytes[i] += stats.allocBytes[i];
+            }
+        }
+
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{\"summary\":{");
+            sb.append("\"files\":").append(files);
+            for (CompileJob.Status status : CompileJob.Status.values()) {
+                sb.append(",\"").append(status.name().toLowerCase()).append("\":")
+                        .append(statuses[status.ordinal()]);
+            }
+            sb.append(",\"cache_hits\":").append(cacheHits);
+            sb.append(",\"batch_wall_ns\":").append(System.nanoTime() - startNanos);
+            sb.append(",\"wall_ns\":").append(totalNanos);
+            sb.append(",\"alloc_bytes\":").append(totalBytes);
+            sb.append(',');
+            appendPhases(sb, wallNanos, allocBytes);
+            return sb.append("}}").toString();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/*
+ * Content-addressed on-disk cache of compiled files.
+ *
+ * An entry is keyed by the SHA-256 of the compiler fingerprint, the kind
+ * of report and the source bytes, and consists of two files in the cache directory:
+ *   <key>.ll   the LLVM IR of the file (only for successful compilations
+ *              that emit IR, i.e. not for --declarations-only)
+ *   <key>.out  the status and the report block of the file; the status
+ *              line ends in " ll" when the entry has a .ll file
+ * The least recently used entries are evicted once the cache grows over
+ * maxBytes. Recency is kept in the modification time of the .out file, so
+ * it survives across runs.
+ */
+
+public class IRCache {
+
+    public static class Result {
+        private final CompileJob.Status status;
+        private final byte[] report;
+        private final byte[] llvm;
+
+        public Result(CompileJob.Status status, byte[] report, byte[] llvm) {
+            this.status = status;
+            this.report = report;
+            this.llvm = llvm;
+        }
+
+        public CompileJob.Status getStatus() {
+            return status;
+        }
+
+        public byte[] getReport() {
+            return report;
+        }
+
+        public byte[] getLlvm() {
+            return llvm;
+        }
+    }
+
+    /* End of the status line of an entry with a .ll file. */
+    private static final String LLVM_SUFFIX = " ll";
+
+    private static byte[] fingerprint = null;
+
+    private final Path dir;
+    private final long maxBytes;
+    /* Entry key -> size in bytes, in access order. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    public IRCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+
+        Files.createDirectories(dir);
+
+        /* Index the existing entries, least recently used first. */
+        List<Path> reports;
+        try (Stream<Path> files = Files.list(dir)) {
+            reports = files.filter(p -> p.toString().endsWith(".out"))
+                    .collect(Collectors.toList());
+        }
+        ArrayList<Map.Entry<Path, FileTime>> byTime = new ArrayList<>();
+        for (Path report : reports)
+            byTime.add(Map.entry(report, Files.getLastModifiedTime(report)));
+        byTime.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+
+        for (Map.Entry<Path, FileTime> e : byTime) {
+            String name = e.getKey().getFileName().toString();
+            String key = name.substring(0, name.length() - ".out".length());
+            long size = Files.size(e.getKey());
+            Path llvm = dir.resolve(key + ".ll");
+            if (Files.exists(llvm))
+                size += Files.size(llvm);
+            entries.put(key, size);
+            totalBytes += size;
+        }
+
+        /* The limit may be lower than in previous runs. */
+        evict();
+    }
+
+    /*
+     * Hash of the class files of the compiler itself, so that entries made
+     * by another build of the compiler are never used. It is taken once,
+     * on first use: CompileServer takes it as it starts.
+     */
+    static synchronized byte[] getFingerprint() {
+        if (fingerprint != null)
+            return fingerprint;
+
+        MessageDigest md = newDigest();
+        try {
+            Path location = Path.of(IRCache.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                List<Path> classes;
+                try (Stream<Path> files = Files.walk(location)) {
+                    classes = files.filter(p -> p.toString().endsWith(".class"))
+                            .sorted().collect(Collectors.toList());
+                }
+                for (Path c : classes) {
+                    md.update(location.relativize(c).toString().getBytes());
+                    md.update(Files.readAllBytes(c));
+                }
+            } else {
+                md.update(Files.readAllBytes(location));
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException("Can't fingerprint compiler: " + ex.getMessage());
+        }
+
+        fingerprint = md.digest();
+        return fingerprint;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /* Key of a source file, for the given kind of report (e.g. "full"). */
+    public String key(ByteBuffer source, String report) {
+        MessageDigest md = newDigest();
+        md.update(getFingerprint());
+        md.update(report.getBytes());
+        md.update((byte) 0);
+        md.update(source.duplicate());
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest())
+            hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    /* Returns the cached entry for key, or null on a miss. */
+    public synchronized Result get(String key) {
+        Path report = dir.resolve(key + ".out");
+
+        /* Entries added by another process since the index was built are used too. */
+        if (!entries.containsKey(key) && !Files.exists(report)) {
+            misses++;
+            return null;
+        }
+
+        try {
+            byte[] data = Files.readAllBytes(report);
+            int nl = 0;
+            while (data[nl] != '\n')
+                nl++;
+            String header = new String(data, 0, nl);
+            boolean hasLlvm = header.endsWith(LLVM_SUFFIX);
+            if (hasLlvm)
+                header = header.substring(0, header.length() - LLVM_SUFFIX.length());
+            CompileJob.Status status = CompileJob.Status.valueOf(header);
+            byte[] body = new byte[data.length - nl - 1];
+            System.arraycopy(data, nl + 1, body, 0, body.length);
+
+            byte[] llvm = null;
+            if (hasLlvm)
+                llvm = Files.readAllBytes(dir.resolve(key + ".ll"));
+
+            Files.setLastModifiedTime(report, FileTime.fromMillis(System.currentTimeMillis()));
+            if (!entries.containsKey(key)) {
+                long size = data.length + (llvm != null ? llvm.length : 0);
+                entries.put(key, size);
+                totalBytes += size;
+            } else {
+                entries.get(key);   /* Mark as most recently used. */
+            }
+            hits++;
+            return new Result(status, body, llvm);
+        } catch (IOException | RuntimeException ex) {
+            /* Evicted by another process or corrupted: recompile. */
+            remove(key);
+            misses++;
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, Result result) throws IOException {
+        long size = 0;
+
+        if (result.getLlvm() != null)
+            size += write(dir.resolve(key + ".ll"), result.getLlvm());
+
+        byte[] status = (result.getStatus().name()
+                + (result.getLlvm() != null ? LLVM_SUFFIX : "") + "\n").getBytes();
+        byte[] data = new byte[status.length + result.getReport().length];
+        System.arraycopy(status, 0, data, 0, status.length);
+        System.arraycopy(result.getReport(), 0, data, status.length, result.getReport().length);
+        size += write(dir.resolve(key + ".out"), data);
+
+        Long old = entries.put(key, size);
+        totalBytes += size - (old != null ? old : 0);
+        evict();
+    }
+
+    /* Write through a temporary file, so readers never see a partial entry. */
+    private long write(Path target, byte[] data) throws IOException {
+        Path tmp = Files.createTempFile(dir, "tmp", null);
+        try {
+            Files.write(tmp, data);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return data.length;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            delete(eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null)
+            totalBytes -= size;
+        delete(key);
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(dir.resolve(key + ".out"));
+            Files.deleteIfExists(dir.resolve(key + ".ll"));
+        } catch (IOException ex) {
+            System.err.println("IR cache: " + ex.getMessage());
+        }
+    }
+
+    public synchronized String counters() {
+        return "hits: " + hits + ", misses: " + misses;
+    }
+}
@@ -1,85 +1,397 @@
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
-
-import my_types.FileHandler;
-import my_types.SymbolTable;
-import syntaxtree.*;
-import my_types.SemanticException;
-import my_visitors.*;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 
 public class Main {
 
     private static void printUsage() {
-        System.err.println("Usage:\n  java Main [inputFile1] [inputFile2] ... [inputFileN]");
+        System.err.println("Usage:\n  java Main [options] [inputFile1] [inputFile2] ... [inputFileN]");
+        System.err.println("  java Main [options] @manifest ...");
+        System.err.println("  java Main --server [-j N] [--socket PATH] [--cache DIR]");
+        System.err.println("  java Main --watch DIR [-j N] [--cache DIR] [--debounce MS] [--quiet]");
+        System.err.println("                  [--parser=NAME] [--declarations-only]");
+        System.err.println("Options:");
+        System.err.println("  @FILE            read input files from FILE, one per line (@- for stdin);");
+        System.err.println("                   blank lines and lines starting with # are skipped");
+        System.err.println("  -j N             compile up to N files in parallel (default: 1)");
+        System.err.println("  --quiet          do not print the declarations and offsets of files");
+        System.err.println("  --declarations-only  stop after the first pass and print the declarations");
+        System.err.println("                   and offsets; method bodies are only checked for");
+        System.err.println("                   balanced braces, not for syntax errors");
+        System.err.println("  --parser=NAME    parse with javacc (default), with the hand-written parser");
+        System.err.println("                   (hand), or with it and a lexer thread for large files");
+        System.err.println("                   (pipelined)");
+        System.err.println("  --shards N       split the files across N child JVMs");
+        System.err.println("  --summary-file F write the batch summary to F instead of stdout");
+        System.err.println("  --server         run as a compile server on a Unix-domain socket");
+        System.err.println("  --shutdown-server  stop the running compile server");
+        System.err.println("  --socket PATH    socket of the compile server (default: $MINIJAVA_SOCKET,");
+        System.err.println("                   or server.sock in $XDG_RUNTIME_DIR/minijava or");
+        System.err.println("                   <tmpdir>/minijava-<user>)");
+        System.err.println("  --no-daemon      compile in this JVM even if a server is running");
+        System.err.println("  --cache DIR      serve unchanged files from an IR cache in DIR");
+        System.err.println("  --cache-size N   evict least recently used entries over N bytes");
+        System.err.println("                   (K, M or G suffix, default: 256M)");
+        System.err.println("  --stats=json     write per-phase time and allocations of every file,");
+        System.err.println("                   and a batch summary, as JSON lines");
+        System.err.println("  --stats-file F   file of --stats records (default: minijava-stats.jsonl)");
+        System.err.println("  --watch DIR      recompile .java files under DIR whenever they change");
+        System.err.println("  --debounce MS    wait for MS quiet milliseconds before recompiling");
+        System.err.println("                   (default: 100)");
+    }
+
+    private static void usageError(String message) {
+        System.err.println(message);
+        printUsage();
+        System.exit(1);
+    }
+
+    private static long parseSize(String value) {
+        long unit = 1;
+        char last = value.isEmpty() ? ' ' : Character.toUpperCase(value.charAt(value.length() - 1));
+        if (last == 'K' || last == 'M' || last == 'G') {
+            unit = last == 'K' ? 1L << 10 : last == 'M' ? 1L << 20 : 1L << 30;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            long size = Long.parseLong(value) * unit;
+            return size > 0 ? size : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /* Input files listed in a manifest, "-" being stdin. */
+    private static void readManifest(String manifest, List<String> files) throws IOException {
+        try (BufferedReader reader = manifest.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(manifest))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith("#"))
+                    files.add(line);
+            }
+        }
+    }
+
+    private static int parseCount(String value, String what) {
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            count = -1;
+        }
+        if (count < 0)
+            usageError("Invalid " + what + ": '" + value + "'");
+        return count;
     }
 
     public static void main(String[] args) {
-        if (args.length < 1) {
+        ArrayList<String> files = new ArrayList<>();
+        Path socketPath = CompileServer.defaultSocketPath();
+        boolean server = false, shutdownServer = false, useDaemon = true;
+        String cacheDir = null;
+        long cacheSize = 256L << 20;
+        IRCache cache = null;
+        String statsFile = null;
+        boolean stats = false;
+        String watchDir = null;
+        long debounceMillis = 100;
+        int jobs = 1;
+        int shards = 0, firstId = 0;
+        boolean manifest = false, quiet = false, declarationsOnly = false;
+        CompileSession.Parser parser = CompileSession.Parser.JAVACC;
+        String summaryFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") || (args[i].startsWith("-j") && args[i].length() > 2)) {
+                String value = args[i].length() > 2 ? args[i].substring(2)
+                        : (i + 1 < args.length ? args[++i] : "");
+                try {
+                    jobs = Integer.parseInt(value);
+                } catch (NumberFormatException ex) {
+                    jobs = 0;
+                }
+                if (jobs < 1)
+                    usageError("Invalid number of jobs: '" + value + "'");
+            } else if (args[i].equals("--server")) {
+                server = true;
+            } else if (args[i].equals("--shutdown-server")) {
+                shutdownServer = true;
+            } else if (args[i].equals("--socket")) {
+                if (i + 1 >= args.length)
+                    usageError("Missing path after --socket");
+                socketPath = Path.of(args[++i]);
+            } else if (args[i].equals("--no-daemon")) {
+                useDaemon = false;
+            } else if (args[i].equals("--cache")) {
+                if (i + 1 >= args.length)
+                    usageError("Missing directory after --cache");
+                cacheDir = args[++i];
+            } else if (args[i].startsWith("--stats=")) {
+                if (!args[i].equals("--stats=json"))
+                    usageError("Unknown stats format: '" + args[i].substring(8) + "'");
+                stats = true;
+            } else if (args[i].equals("--stats-file")) {
+                if (i + 1 >= args.length)
+                    usageError("Missing path after --stats-file");
+                statsFile = args[++i];
+            } else if (args[i].equals("--watch")) {
+                if (i + 1 >= args.length)
+                    usageError("Missing directory after --watch");
+                watchDir = args[++i];
+            } else if (args[i].equals("--debounce")) {
+                String value = i + 1 < args.length ? args[++i] : "";
+                try {
+                    debounceMillis = Long.parseLong(value);
+                } catch (NumberFormatException ex) {
+                    debounceMillis = -1;
+                }
+                if (debounceMillis < 0)
+                    usageError("Invalid debounce time: '" + value + "'");
+            } else if (args[i].equals("--cache-size")) {
+                String value = i + 1 < args.length ? args[++i] : "";
+                cacheSize = parseSize(value);
+                if (cacheSize < 0)
+                    usageError("Invalid cache size: '" + value + "'");
+            } else if (args[i].equals("--quiet")) {
+                quiet = true;
+            } else if (args[i].equals("--declarations-only")) {
+                declarationsOnly = true;
+            } else if (args[i].startsWith("--parser=")) {
+                String name = args[i].substring(9);
+                if (name.equals("javacc"))
+                    parser = CompileSession.Parser.JAVACC;
+                else if (name.equals("hand"))
+                    parser = CompileSession.Parser.HAND;
+                else if (name.equals("pipelined"))
+                    parser = CompileSession.Parser.PIPELINED;
+                else
+                    usageError("Unknown parser: '" + name + "'");
+            } else if (args[i].equals("--shards")) {
+                shards = parseCount(i + 1 < args.length ? args[++i] : "", "number of shards");
+            } else if (args[i].equals("--first-id")) {
+                /* Used by the shards of a batch, for global file numbers. */
+                firstId = parseCount(i + 1 < args.length ? args[++i] : "", "file number");
+            } else if (args[i].equals("--summary-file")) {
+                if (i + 1 >= args.length)
+                    usageError("Missing path after --summary-file");
+                summaryFile = args[++i];
+            } else if (args[i].startsWith("@") && args[i].length() > 1) {
+                try {
+                    readManifest(args[i].substring(1), files);
+                } catch (IOException ex) {
+                    System.err.println("Can't read manifest: " + ex.getMessage());
+                    System.exit(1);
+                }
+                manifest = true;
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        if (cacheDir != null && !shutdownServer) {
+            try {
+                cache = new IRCache(Path.of(cacheDir), cacheSize);
+            } catch (IOException ex) {
+                System.err.println("Can't open IR cache: " + ex.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (server) {
+            try {
+                new CompileServer(socketPath, jobs, cache).serve();
+            } catch (IOException ex) {
+                System.err.println(ex.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (watchDir != null) {
+            if (stats)
+                usageError("--stats=json can't be used with --watch");
+
+            try {
+                Watcher watcher = new Watcher(Path.of(watchDir), jobs, cache, debounceMillis);
+                watcher.setQuiet(quiet);
+                watcher.setParser(parser);
+                watcher.setDeclarationsOnly(declarationsOnly);
+                watcher.watch();
+            } catch (IOException ex) {
+                System.err.println(ex.getMessage());
+                System.exit(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        if (shutdownServer) {
+            if (!CompileClient.shutdown(socketPath)) {
+                System.err.println("No compile server is listening on " + socketPath);
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (files.size() < 1) {
             printUsage();
             System.exit(1);
         }
 
-        for (int i = 0; i < args.length; i++) {
-            FileHandler fh = null;
-            FileInputStream fis = null;
-            FileWriter fw = null;
-            File llvmFile;
+        if (shards > 1) {
+            if (stats)
+                usageError("--stats=json can't be used with --shards");
+
+            ArrayList<String> childOptions = new ArrayList<>();
+            childOptions.add("-j");
+            childOptions.add(Integer.toString(jobs));
+            if (quiet)
+                childOptions.add("--quiet");
+            if (declarationsOnly)
+                childOptions.add("--declarations-only");
+            if (parser != CompileSession.Parser.JAVACC)
+                childOptions.add("--parser=" + parser.name().toLowerCase());
+            if (cacheDir != null) {
+                childOptions.add("--cache");
+                childOptions.add(cacheDir);
+                childOptions.add("--cache-size");
+                childOptions.add(Long.toString(cacheSize));
+            }
 
             try {
-                fh = new FileHandler(i, args[i]);
-                fh.printTitleSep();
+                ShardRunner runner = new ShardRunner(files, shards, childOptions);
+                BatchSummary batchSummary = runner.run();
+                writeSummary(batchSummary, summaryFile);
+                if (runner.getFailedShards() > 0)
+                    System.exit(1);
+            } catch (IOException ex) {
+                System.err.println("Sharded batch failed: " + ex.getMessage());
+                System.exit(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
 
-                fis = new FileInputStream(args[i]);
+        /* Forward to a running compile server, if any. Stats are measured here only. */
+        if (useDaemon && !stats && !quiet && summaryFile == null && !manifest
+                && parser == CompileSession.Parser.JAVACC && !declarationsOnly
+                && CompileClient.compile(socketPath, files))
+            return;
 
-                MiniJavaParser parser = new MiniJavaParser(fis);
-                Goal root = parser.Goal();
-                System.out.println("File parsed successfully.");
+        PrintStream statsOut = null;
+        CompileStats.Summary summary = null;
+        if (stats) {
+            try {
+                statsOut = new PrintStream(new FileOutputStream(
+                        statsFile != null ? statsFile : "minijava-stats.jsonl"));
+            } catch (IOException ex) {
+                System.err.println("Can't open stats file: " + ex.getMessage());
+                System.exit(1);
+            }
+            summary = new CompileStats.Summary();
+        }
 
-                FirstPassVisitor collector = new FirstPassVisitor();
-                root.accept(collector, null);
-                System.out.println("First pass successful.");
+        ArrayList<CompileJob> batch = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            CompileJob job = new CompileJob(firstId + i, files.get(i), null);
+            job.setCache(cache);
+            job.setQuiet(quiet);
+            job.setParser(parser);
+            job.setDeclarationsOnly(declarationsOnly);
+            if (stats)
+                job.setStats(new CompileStats(firstId + i, files.get(i)));
+            batch.add(job);
+        }
 
-                SymbolTable classes = collector.getClasses();
+        final PrintStream finalStatsOut = statsOut;
+        final CompileStats.Summary finalSummary = summary;
+        final BatchSummary batchSummary = new BatchSummary();
+        final ReportWriter reports = new ReportWriter();
+        Consumer<CompileJob> done = job -> {
+            try {
+                reports.submit(job.getOutput(), job.getErrors());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            batchSummary.add(job.getStatus());
+            if (finalStatsOut != null) {
+                finalStatsOut.println(job.getStats().toJson());
+                finalSummary.add(job.getStats());
+            }
+        };
 
-                SecondPassVisitor analyzer = new SecondPassVisitor(classes);
-                root.accept(analyzer, null);
-                System.out.println("Second pass successful.");
+        if (jobs == 1 || files.size() == 1) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).run();
+                done.accept(batch.get(i));
+                /* Done with its report. */
+                batch.set(i, null);
+            }
+        } else {
+            compileParallel(batch, jobs, done);
+        }
 
-                /* Print all declarations. */
-                collector.printDeclarations();
+        try {
+            reports.close();
+        } catch (IOException ex) {
+            System.err.println("Can't write report: " + ex.getMessage());
+            System.exit(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
 
-                /* Print offsets for every class. */
-                collector.printOffsets();
+        if (statsOut != null) {
+            statsOut.println(summary.toJson());
+            statsOut.close();
+        }
 
-                /* Create LLVM IR file. */
-                llvmFile = new File(fh.getFileName() + ".ll");
-                if (llvmFile.exists())
-                    llvmFile.delete();
-                llvmFile.createNewFile();
-                fw = new FileWriter(llvmFile);
+        try {
+            if (manifest || summaryFile != null)
+                writeSummary(batchSummary, summaryFile);
+        } catch (IOException ex) {
+            System.err.println("Can't write summary file: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
 
-                ThirdPassVisitor generator = new ThirdPassVisitor(classes, fw);
-                root.accept(generator, null);
-                System.out.println("IR generated successfully.");
+    private static void writeSummary(BatchSummary summary, String summaryFile)
+            throws IOException {
+        if (summaryFile != null)
+            summary.write(Path.of(summaryFile));
+        else
+            System.out.println(summary);
+    }
 
-            } catch (ParseException | SemanticException ex) {
-                System.out.println(ex.getMessage());
-            } catch (Exception ex) {
-                System.err.println(ex.getMessage());
-            } finally {
-                try {
-                    if (fis != null) fis.close();
-                    if (fw != null) fw.close();
-                } catch (IOException ex) {
-                    System.err.println(ex.getMessage());
-                }
+    /*
+     * Run every file on a worker pool. Each job writes its report block into
+     * its own buffers, which are reported in argument order as soon as all
+     * previous files are done.
+     */
+    private static void compileParallel(ArrayList<CompileJob> batch, int jobs,
+                                        Consumer<CompileJob> done) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, batch.size()));
 
-                if (fh != null) fh.printSep();
-                System.out.println();
-            }
+        try {
+            CompileBatch.run(batch, pool, done);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
+
+        pool.shutdown();
     }
 }
@@ -0,0 +1,381 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/*
+ * Hand-written lexer for the MiniJava token set, over the bytes of a plain
+ * ASCII source. Kinds are those of MiniJavaParserConstants. Tokens are not
+ * objects: next() returns the kind of the next token, whose offsets in the
+ * source can be read until the following call. Whitespace and comments are
+ * skipped without allocating; images are only made by getImage().
+ *
+ * Runs of whitespace and the bodies of comments are scanned with the
+ * ByteScanner, which may compare many bytes at a time.
+ *
+ * Keywords are found with a perfect hash on the length and the first and
+ * last characters of an identifier. "System.out.println" is one token, as
+ * in the grammar, only if all of it is there.
+ *
+ * As with AsciiCharStream, sources with Unicode escapes or non-ASCII bytes
+ * throw AsciiCharStream.Fallback.
+ */
+
+public class MiniJavaLexer implements TokenSource, MiniJavaParserConstants {
+
+    private static final ByteScanner SCANNER = ByteScanner.get();
+    private static final byte[][] KEYWORDS = new byte[64][];
+    private static final int[] KEYWORD_KINDS = new int[64];
+    private static final byte[] SYSTEM = "System".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRINT_TAIL = ".out.println".getBytes(StandardCharsets.US_ASCII);
+
+    /* Tokens written inline in the grammar, which have no constant. */
+    private static final int COMMA = literalKind(","), TIMES = literalKind("*");
+
+    /* Character classes, anything else being 0. */
+    private static final byte SPACE = 1, LETTER = 2, DIGIT = 3;
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (int kind = BOOLEAN; kind <= VOID; kind++) {
+            if (kind == PRINT)
+                continue;
+            /* The images of tokenImage are quoted. */
+            String image = tokenImage[kind];
+            byte[] keyword = image.substring(1, image.length() - 1).getBytes(StandardCharsets.US_ASCII);
+            int h = hash(keyword[0], keyword[keyword.length - 1], keyword.length);
+            if (KEYWORDS[h] != null)
+                throw new IllegalStateException("Keyword hash collision: " + image);
+            KEYWORDS[h] = keyword;
+            KEYWORD_KINDS[h] = kind;
+        }
+
+        for (char c : " \t\n\r\f".toCharArray())
+            CLASSES[c] = SPACE;
+        for (char c = 'a'; c <= 'z'; c++)
+            CLASSES[c] = LETTER;
+        for (char c = 'A'; c <= 'Z'; c++)
+            CLASSES[c] = LETTER;
+        CLASSES['_'] = CLASSES['$'] = LETTER;
+        for (char c = '0'; c <= '9'; c++)
+            CLASSES[c] = DIGIT;
+    }
+
+    private static int literalKind(String literal) {
+        int kind = java.util.Arrays.asList(tokenImage).indexOf('"' + literal + '"');
+        if (kind < 0)
+            throw new IllegalStateException("No token " + literal);
+        return kind;
+    }
+
+    private static int hash(int first, int last, int length) {
+        return (first + last + 7 * length) & 63;
+    }
+
+    private ByteBuffer buffer;
+    /* The array of buffer, if any, which is faster to read. */
+    private byte[] data;
+    private int limit;
+    private int pos;
+    private int kind = EOF;
+    private int begin, end;
+
+    /* Line and column of the character at curIdx, see position(). */
+    private int curIdx, curLine, curColumn;
+    private boolean curCR, curLF;
+
+    public MiniJavaLexer() {
+        reset(new byte[0]);
+    }
+
+    public void reset(byte[] source) {
+        reset(ByteBuffer.wrap(source));
+    }
+
+    /* Lex the given source next, from its position to its limit. */
+    public void reset(ByteBuffer source) {
+        reset(source, source.position(), source.limit());
+    }
+
+    /*
+     * Lex the range [from, to) of the given source next. Lines and columns
+     * are still counted from the position of the source.
+     */
+    public void reset(ByteBuffer source, int from, int to) {
+        buffer = source;
+        data = source.hasArray() && source.arrayOffset() == 0 ? source.array() : null;
+        limit = to;
+        pos = from;
+        kind = EOF;
+        begin = end = pos;
+        rewind();
+    }
+
+    private int byteAt(int i) {
+        byte b = data != null ? data[i] : buffer.get(i);
+        if (b < 0)
+            throw AsciiCharStream.FALLBACK;
+        return b;
+    }
+
+    private byte classOf(int i) {
+        return CLASSES[byteAt(i)];
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
+    /* Offset of the first character of the token. */
+    public int getBegin() {
+        return begin;
+    }
+
+    /* Offset after the last character of the token. */
+    public int getEnd() {
+        return end;
+    }
+
+    public String getImage() {
+        return kind == EOF ? "" : getImage(begin, end);
+    }
+
+    /* Image of a token read before, from its offsets. */
+    public String getImage(int begin, int end) {
+        if (data != null)
+            return new String(data, begin, end - begin, StandardCharsets.ISO_8859_1);
+
+        byte[] image = new byte[end - begin];
+        buffer.get(begin, image);
+        return new String(image, StandardCharsets.ISO_8859_1);
+    }
+
+    /* Skip whitespace and comments, and return the kind of the next token. */
+    public int next() {
+        skip();
+        begin = pos;
+        if (pos >= limit)
+            return kind = EOF;
+
+        int c = byteAt(pos);
+        switch (CLASSES[c]) {
+            case LETTER:
+                kind = identifier();
+                break;
+            case DIGIT:
+                kind = integer(c);
+                break;
+            default:
+                kind = operator(c);
+                break;
+        }
+        end = pos;
+        return kind;
+    }
+
+    private void skip() {
+        while (pos < limit) {
+            int c = byteAt(pos);
+            if (CLASSES[c] == SPACE) {
+                /* Most runs are a single space, not worth a scan. */
+                if (++pos < limit && classOf(pos) == SPACE)
+                    pos = data != null ? SCANNER.skipSpaces(data, pos + 1, limit)
+                            : SCANNER.skipSpaces(buffer, pos + 1, limit);
+            } else if (c == '/' && pos + 1 < limit && byteAt(pos + 1) == '/') {
+                skipLineComment();
+            } else if (c == '/' && pos + 1 < limit && byteAt(pos + 1) == '*') {
+                skipBlockComment();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /* An escape in a comment may end it, e.g. \u000a. */
+    private void checkEscape(int i) {
+        if (i + 1 < limit && byteAt(i + 1) == 'u')
+            throw AsciiCharStream.FALLBACK;
+    }
+
+    /* As in the grammar, a line comment must end with a line terminator. */
+    private void skipLineComment() {
+        for (int i = findLineEnd(pos + 2); i < limit; i = findLineEnd(i + 1)) {
+            int c = byteAt(i);
+            if (c == '\n' || c == '\r') {
+                pos = i + 1;
+                return;
+            }
+            if (c == '\\')
+                checkEscape(i);
+        }
+        throw error(pos, "Unterminated comment");
+    }
+
+    private int findLineEnd(int from) {
+        return data != null ? SCANNER.findLineEnd(data, from, limit)
+                : SCANNER.findLineEnd(buffer, from, limit);
+    }
+
+    /*
+     * Longest match of the grammar: a comment starting with "/**" is not
+     * closed by the "/" right after, if it is closed further on.
+     */
+    private void skipBlockComment() {
+        int close = -1;
+        if (pos + 3 < limit && byteAt(pos + 2) == '*' && byteAt(pos + 3) == '/')
+            close = closeOf(pos + 3);
+        if (close < 0)
+            close = closeOf(pos + 2);
+        if (close < 0)
+            throw error(pos, "Unterminated comment");
+        pos = close;
+    }
+
+    /* Offset after the first "*\/" from the given offset, or -1. */
+    private int closeOf(int from) {
+        for (int i = findStar(from); i < limit; i = findStar(i + 1)) {
+            int c = byteAt(i);
+            if (c == '*' && i + 1 < limit && byteAt(i + 1) == '/')
+                return i + 2;
+            if (c == '\\')
+                checkEscape(i);
+        }
+        return -1;
+    }
+
+    private int findStar(int from) {
+        return data != null ? SCANNER.findStar(data, from, limit)
+                : SCANNER.findStar(buffer, from, limit);
+    }
+
+    private int identifier() {
+        int start = pos;
+        do {
+            pos++;
+        } while (pos < limit && classOf(pos) >= LETTER);
+
+        int length = pos - start;
+        int h = hash(byteAt(start), byteAt(pos - 1), length);
+        byte[] keyword = KEYWORDS[h];
+        if (keyword != null && keyword.length == length && matches(start, keyword))
+            return KEYWORD_KINDS[h];
+
+        /* "System.out.println" is longer than the identifier "System". */
+        if (length == SYSTEM.length && matches(start, SYSTEM) && matches(pos, PRINT_TAIL)) {
+            pos += PRINT_TAIL.length;
+            return PRINT;
+        }
+        return IDENTIFIER;
+    }
+
+    private boolean matches(int start, byte[] expected) {
+        if (start + expected.length > limit)
+            return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (byteAt(start + i) != expected[i])
+                return false;
+        }
+        return true;
+    }
+
+    /* "0", or a number without leading zeros. */
+    private int integer(int first) {
+        pos++;
+        if (first != '0') {
+            while (pos < limit && classOf(pos) == DIGIT)
+                pos++;
+        }
+        return INTEGER_LITERAL;
+    }
+
+    private int operator(int c) {
+        int kind;
+        switch (c) {
+            case '(': kind = LPAREN; break;
+            case ')': kind = RPAREN; break;
+            case '[': kind = LSQPAREN; break;
+            case ']': kind = RSQPAREN; break;
+            case '{': kind = LBRACE; break;
+            case '}': kind = RBRACE; break;
+            case ';': kind = SEMICOLON; break;
+            case '.': kind = DOT; break;
+            case '=': kind = ASSIGN; break;
+            case '<': kind = LT; break;
+            case '+': kind = PLUS; break;
+            case '-': kind = MINUS; break;
+            case '!': kind = NOT; break;
+            case ',': kind = COMMA; break;
+            case '*': kind = TIMES; break;
+            case '&':
+                if (pos + 1 < limit && byteAt(pos + 1) == '&') {
+                    pos += 2;
+                    return AND;
+                }
+                throw error(pos, "Encountered: \"&\"");
+            case '\\':
+                if (pos + 1 < limit && byteAt(pos + 1) == 'u')
+                    throw AsciiCharStream.FALLBACK;
+                throw error(pos, "Encountered: \"\\\\\"");
+            default:
+                throw error(pos, "Encountered: \"" + (char) c + "\" (" + c + ")");
+        }
+        pos++;
+        return kind;
+    }
+
+    private TokenMgrError error(int offset, String message) {
+        return new TokenMgrError("Lexical error at line " + getLine(offset) + ", column "
+                + getColumn(offset) + ".  " + message, TokenMgrError.LEXICAL_ERROR);
+    }
+
+    private void rewind() {
+        curIdx = buffer.position() - 1;
+        curLine = 1;
+        curColumn = 0;
+        curCR = curLF = false;
+    }
+
+    /*
+     * Compute the line and column of the character at offset, the way
+     * JavaCharStream does (tabs of 8 columns). Offsets are expected to be
+     * asked for in increasing order; going back starts over.
+     */
+    private void position(int offset) {
+        if (offset < curIdx)
+            rewind();
+
+        while (curIdx < offset) {
+            int c = byteAt(++curIdx);
+            curColumn++;
+
+            if (curLF) {
+                curLF = false;
+                curLine += (curColumn = 1);
+            } else if (curCR) {
+                curCR = false;
+                if (c == '\n')
+                    curLF = true;
+                else
+                    curLine += (curColumn = 1);
+            }
+
+            if (c == '\r') {
+                curCR = true;
+            } else if (c == '\n') {
+                curLF = true;
+            } else if (c == '\t') {
+                curColumn--;
+                curColumn += 8 - (curColumn % 8);
+            }
+        }
+    }
+
+    public int getLine(int offset) {
+        position(offset);
+        return curLine;
+    }
+
+    public int getColumn(int offset) {
+        position(offset);
+        return curColumn;
+    }
+}
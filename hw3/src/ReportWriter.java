@@ -0,0 +1,87 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/*
+ * Writes the report blocks of a batch to stdout and stderr on a thread of
+ * its own, so the compiler threads never wait for the console. Blocks are
+ * written in submission order through large buffers, which are flushed
+ * whenever the writer runs out of work, and before anything is written to
+ * stderr so that both streams stay in order on a terminal.
+ */
+
+public class ReportWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int QUEUE_SIZE = 256;
+    private static final byte[][] END = new byte[0][];
+
+    private final BlockingQueue<byte[][]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final OutputStream out;
+    private final OutputStream err;
+    private final Thread writer;
+    private IOException failure = null;
+
+    public ReportWriter() {
+        /* Bypass System.out, which flushes on every line. */
+        System.out.flush();
+        out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE);
+        err = new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), BUFFER_SIZE);
+        writer = new Thread(this::drain, "report-writer");
+        writer.start();
+    }
+
+    /* Queue a report block; blocks only if the writer is far behind. */
+    public void submit(byte[] stdout, byte[] stderr) throws InterruptedException {
+        queue.put(new byte[][] { stdout, stderr });
+    }
+
+    private void drain() {
+        try {
+            byte[][] block;
+            while ((block = queue.take()) != END) {
+                /* Keep taking blocks after a failure, so submit() never blocks. */
+                if (failure != null)
+                    continue;
+                try {
+                    write(block);
+                } catch (IOException ex) {
+                    failure = ex;
+                }
+            }
+            if (failure == null) {
+                out.flush();
+                err.flush();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(byte[][] block) throws IOException {
+        out.write(block[0]);
+        if (block[1].length > 0) {
+            out.flush();
+            err.write(block[1]);
+            err.flush();
+        }
+        if (queue.isEmpty())
+            out.flush();
+    }
+
+    /* Write everything submitted so far and stop the writer. */
+    public void close() throws IOException, InterruptedException {
+        if (writer.isAlive())
+            queue.put(END);
+        writer.join();
+        if (failure != null)
+            throw failure;
+    }
+}
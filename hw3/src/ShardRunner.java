@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/*
+ * Splits a batch into contiguous shards and compiles every shard in a
+ * child JVM running this same Main. Children write their report blocks to
+ * temporary files, which are printed in shard order, so the output is the
+ * same as that of a single JVM. The summaries of the shards are merged;
+ * the files of a shard that fails or writes no summary count as errors.
+ */
+
+public class ShardRunner {
+
+    private final List<String> files;
+    private final int shards;
+    private final List<String> childOptions;
+    private int failedShards;
+
+    /* childOptions are passed on to every child, e.g. the cache options. */
+    public ShardRunner(List<String> files, int shards, List<String> childOptions) {
+        this.files = files;
+        this.shards = Math.min(shards, files.size());
+        this.childOptions = childOptions;
+    }
+
+    private static String javaCommand() {
+        return ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    }
+
+    /* Number of shards that failed in the last run(). */
+    public int getFailedShards() {
+        return failedShards;
+    }
+
+    public BatchSummary run() throws IOException, InterruptedException {
+        BatchSummary summary = new BatchSummary();
+        Path tmpDir = Files.createTempDirectory("minijava-shards");
+        ArrayList<Process> processes = new ArrayList<>();
+        int[] shardFiles = new int[shards];
+        failedShards = 0;
+
+        try {
+            for (int s = 0; s < shards; s++) {
+                /* The first (files % shards) shards get one file more. */
+                int from = s * (files.size() / shards) + Math.min(s, files.size() % shards);
+                int to = from + files.size() / shards + (s < files.size() % shards ? 1 : 0);
+                shardFiles[s] = to - from;
+
+                Path manifest = tmpDir.resolve("shard" + s + ".manifest");
+                Files.write(manifest, files.subList(from, to));
+
+                ArrayList<String> command = new ArrayList<>();
+                command.add(javaCommand());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add("Main");
+                command.add("--no-daemon");
+                command.add("--first-id");
+                command.add(Integer.toString(from));
+                command.add("--summary-file");
+                command.add(tmpDir.resolve("shard" + s + ".summary").toString());
+                command.addAll(childOptions);
+                command.add("@" + manifest);
+
+                ProcessBuilder pb = new ProcessBuilder(command);
+                pb.redirectOutput(tmpDir.resolve("shard" + s + ".out").toFile());
+                pb.redirectError(tmpDir.resolve("shard" + s + ".err").toFile());
+                processes.add(pb.start());
+            }
+
+            for (int s = 0; s < shards; s++) {
+                int exitCode = processes.get(s).waitFor();
+
+                Files.copy(tmpDir.resolve("shard" + s + ".out"), System.out);
+                System.out.flush();
+                Files.copy(tmpDir.resolve("shard" + s + ".err"), System.err);
+                System.err.flush();
+
+                Path shardSummary = tmpDir.resolve("shard" + s + ".summary");
+                if (exitCode != 0 || !Files.exists(shardSummary)) {
+                    System.err.println("Shard " + s + " failed with exit code " + exitCode);
+                    summary.add(CompileJob.Status.ERROR, shardFiles[s]);
+                    failedShards++;
+                    continue;
+                }
+                summary.merge(BatchSummary.read(shardSummary));
+            }
+        } finally {
+            for (Process process : processes)
+                process.destroy();
+            try (var paths = Files.list(tmpDir)) {
+                for (Path p : (Iterable<Path>) paths::iterator)
+                    Files.deleteIfExists(p);
+            }
+            Files.deleteIfExists(tmpDir);
+        }
+
+        return summary;
+    }
+}
@@ -0,0 +1,53 @@
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/*
+ * Source files as byte buffers. Files of at least MAP_THRESHOLD bytes are
+ * memory-mapped, so they are lexed straight from the page cache without
+ * being copied; smaller ones are cheaper to read into an array than to map.
+ */
+
+public class SourceFile {
+
+    public static final long MAP_THRESHOLD = 64 << 10;
+
+    public static ByteBuffer read(String path) throws IOException {
+        try (FileInputStream in = new FileInputStream(path);
+             FileChannel channel = in.getChannel()) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD && size <= Integer.MAX_VALUE)
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return ByteBuffer.wrap(in.readAllBytes());
+        }
+    }
+
+    /* The remaining bytes of the buffer as a stream; the buffer is not changed. */
+    public static InputStream asStream(ByteBuffer source) {
+        if (source.hasArray()) {
+            return new ByteArrayInputStream(source.array(),
+                    source.arrayOffset() + source.position(), source.remaining());
+        }
+
+        ByteBuffer buffer = source.duplicate();
+        return new InputStream() {
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+            }
+
+            public int read(byte[] b, int off, int len) {
+                if (len == 0)
+                    return 0;
+                if (!buffer.hasRemaining())
+                    return -1;
+                len = Math.min(len, buffer.remaining());
+                buffer.get(b, off, len);
+                return len;
+            }
+        };
+    }
+}
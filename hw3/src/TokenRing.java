@@ -0,0 +1,147 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+
+/*
+ * Lock-free single-producer, single-consumer ring of tokens, for lexing on
+ * one thread while parsing on another. A token is a record of three ints
+ * in one int array: kind, begin and end offsets. Each side only publishes
+ * its position every BATCH tokens, or when it has to wait for the other,
+ * so that the two threads rarely touch the same cache lines.
+ *
+ * The producer runs produce() with a lexer of its own; the consumer reads
+ * the tokens through TokenSource. A lexical error is queued in place of
+ * the token that failed, and thrown by next() when the consumer gets
+ * there, as if the consumer had lexed the source itself. cancel() stops a
+ * producer the consumer does not need anymore.
+ */
+
+public class TokenRing implements TokenSource, MiniJavaParserConstants {
+
+    private static final int BATCH = 64;
+    /* Kind of the record of a lexical error. */
+    private static final int FAILED = -1;
+    /* Busy waits before yielding, and yields before sleeping. */
+    private static final int SPINS = 128, YIELDS = 64;
+
+    private final int[] records;
+    private final int mask;
+
+    /* Tokens written by the producer, and read by the consumer. */
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private volatile boolean cancelled = false;
+    private volatile Throwable failure = null;
+
+    /* Producer side */
+    private long tail;
+    private long headLimit;
+
+    /* Consumer side */
+    private long head;
+    private long tailLimit;
+    private int kind, begin, end;
+
+    /* A ring of the given number of tokens, a power of two. */
+    public TokenRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        records = new int[capacity * 3];
+        mask = capacity - 1;
+    }
+
+    /* Empty the ring, once the producer of the last source is done. */
+    public void reset() {
+        published.set(0);
+        consumed.set(0);
+        cancelled = false;
+        failure = null;
+        tail = head = tailLimit = 0;
+        headLimit = mask + 1;
+    }
+
+    /* ------------------------------- Producer ------------------------------- */
+
+    /* Queue all the tokens of the lexer, up to EOF or a lexical error. */
+    public void produce(MiniJavaLexer lexer) {
+        try {
+            int kind;
+            do {
+                kind = lexer.next();
+                if (!put(kind, lexer.getBegin(), lexer.getEnd()))
+                    return;
+            } while (kind != EOF);
+        } catch (RuntimeException | Error ex) {
+            failure = ex;
+            put(FAILED, 0, 0);
+        }
+        published.lazySet(tail);
+    }
+
+    /* Queue a token, or return false if the consumer is gone. */
+    private boolean put(int kind, int begin, int end) {
+        if (tail == headLimit) {
+            published.lazySet(tail);
+            for (int waits = 0; tail == (headLimit = consumed.get() + mask + 1); waits++) {
+                if (cancelled)
+                    return false;
+                pause(waits);
+            }
+        }
+
+        int i = (int) (tail & mask) * 3;
+        records[i] = kind;
+        records[i + 1] = begin;
+        records[i + 2] = end;
+        if (++tail % BATCH == 0)
+            published.lazySet(tail);
+        return true;
+    }
+
+    /* ------------------------------- Consumer ------------------------------- */
+
+    public int next() {
+        if (head == tailLimit) {
+            consumed.lazySet(head);
+            for (int waits = 0; head == (tailLimit = published.get()); waits++)
+                pause(waits);
+        }
+
+        int i = (int) (head & mask) * 3;
+        kind = records[i];
+        begin = records[i + 1];
+        end = records[i + 2];
+        if (++head % BATCH == 0)
+            consumed.lazySet(head);
+
+        if (kind == FAILED) {
+            Throwable ex = failure;
+            if (ex instanceof Error)
+                throw (Error) ex;
+            throw (RuntimeException) ex;
+        }
+        return kind;
+    }
+
+    public int getBegin() {
+        return begin;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    /* Make a waiting producer give up. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private static void pause(int waits) {
+        if (waits < SPINS)
+            Thread.onSpinWait();
+        else if (waits < SPINS + YIELDS)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(10_000);
+    }
+}
@@ -0,0 +1,16 @@
+/*
+ * Tokens as the hand-written parser reads them: next() returns the kind of
+ * the next token, whose offsets can be read until the following call. See
+ * MiniJavaLexer, and TokenRing for tokens lexed on another thread.
+ */
+
+public interface TokenSource {
+
+    int next();
+
+    /* Offset of the first character of the token. */
+    int getBegin();
+
+    /* Offset after the last character of the token. */
+    int getEnd();
+}
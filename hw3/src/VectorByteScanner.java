@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/*
+ * ByteScanner comparing a whole vector of bytes at a time, 32 or 64 with
+ * AVX2 or AVX-512, and finishing the tail of a range with the scalar
+ * scans. Needs --add-modules jdk.incubator.vector to build and to run, see
+ * ByteScanner.get().
+ */
+
+public class VectorByteScanner extends ByteScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LENGTH = SPECIES.length();
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    private static VectorMask<Byte> spaces(ByteVector v) {
+        return v.eq((byte) ' ').or(v.eq((byte) '\n')).or(v.eq((byte) '\t'))
+                .or(v.eq((byte) '\r')).or(v.eq((byte) '\f'));
+    }
+
+    private static VectorMask<Byte> lineEnds(ByteVector v) {
+        return v.eq((byte) '\n').or(v.eq((byte) '\r')).or(v.eq((byte) '\\'))
+                .or(v.lt((byte) 0));
+    }
+
+    private static VectorMask<Byte> stars(ByteVector v) {
+        return v.eq((byte) '*').or(v.eq((byte) '\\')).or(v.lt((byte) 0));
+    }
+
+    public int skipSpaces(byte[] data, int from, int to) {
+        for (; from + LENGTH <= to; from += LENGTH) {
+            VectorMask<Byte> others = spaces(ByteVector.fromArray(SPECIES, data, from)).not();
+            if (others.anyTrue())
+                return from + others.firstTrue();
+        }
+        return super.skipSpaces(data, from, to);
+    }
+
+    public int skipSpaces(ByteBuffer buffer, int from, int to) {
+        for (; from + LENGTH <= to; from += LENGTH) {
+            VectorMask<Byte> others =
+                    spaces(ByteVector.fromByteBuffer(SPECIES, buffer, from, ORDER)).not();
+            if (others.anyTrue())
+                return from + others.firstTrue();
+        }
+        return super.skipSpaces(buffer, from, to);
+    }
+
+    public int findLineEnd(byte[] data, int from, int to) {
+        for (; from + LENGTH <= to; from += LENGTH) {
+            VectorMask<Byte> ends = lineEnds(ByteVector.fromArray(SPECIES, data, from));
+            if (ends.anyTrue())
+                return from + ends.firstTrue();
+        }
+        return super.findLineEnd(data, from, to);
+    }
+
+    public int findLineEnd(ByteBuffer buffer, int from, int to) {
+        for (; from + LENGTH <= to; from += LENGTH) {
+            VectorMask<Byte> ends =
+                    lineEnds(ByteVector.fromByteBuffer(SPECIES, buffer, from, ORDER));
+            if (ends.anyTrue())
+                return from + ends.firstTrue();
+        }
+        return super.findLineEnd(buffer, from, to);
+    }
+
+    public int findStar(byte[] data, int from, int to) {
+        for (; from + LENGTH <= to; from += LENGTH) {
+            VectorMask<Byte> found = stars(ByteVector.fromArray(SPECIES, data, from));
+            if (found.anyTrue())
+                return from + found.firstTrue();
+        }
+        return super.findStar(data, from, to);
+    }
+
+    public int findStar(ByteBuffer buffer, int from, int to) {
+        for (; from + LENGTH <= to; from += LENGTH) {
+            VectorMask<Byte> found =
+                    stars(ByteVector.fromByteBuffer(SPECIES, buffer, from, ORDER));
+            if (found.anyTrue())
+                return from + found.firstTrue();
+        }
+        return super.findStar(buffer, from, to);
+    }
+}
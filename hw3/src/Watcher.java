@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+
+/*
+ * Watch mode: recompile every .java file under a directory tree as soon as
+ * it is saved, in the same JVM. Bursts of events (editors often write a
+ * file several times per save) are merged until no event has arrived for
+ * debounceMillis. After each file the latency from its last modification
+ * to the written .ll file is reported on stderr.
+ */
+
+public class Watcher {
+
+    private final Path root;
+    private final int jobs;
+    private final IRCache cache;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final HashMap<WatchKey, Path> dirs = new HashMap<>();
+    private int nextId = 0;
+    private boolean quiet = false;
+    private CompileSession.Parser parser = CompileSession.Parser.JAVACC;
+    private boolean declarationsOnly = false;
+
+    public Watcher(Path root, int jobs, IRCache cache, long debounceMillis) throws IOException {
+        this.root = root;
+        this.jobs = jobs;
+        this.cache = cache;
+        this.debounceMillis = debounceMillis;
+        this.watchService = root.getFileSystem().newWatchService();
+    }
+
+    /* Options of the jobs of the watcher, see CompileJob. */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    public void setParser(CompileSession.Parser parser) {
+        this.parser = parser;
+    }
+
+    public void setDeclarationsOnly(boolean declarationsOnly) {
+        this.declarationsOnly = declarationsOnly;
+    }
+
+    /*
+     * Watch start and every directory under it. Files found on the way are
+     * added to changed, if not null: they may have been written into a new
+     * directory before it was registered.
+     */
+    private void registerAll(Path start, TreeSet<Path> changed) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                    throws IOException {
+                dirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (changed != null && file.toString().endsWith(".java"))
+                    changed.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void watch() throws IOException, InterruptedException {
+        TreeSet<Path> changed = new TreeSet<>();
+        ExecutorService pool = jobs > 1 ? Executors.newFixedThreadPool(jobs) : null;
+
+        registerAll(root, null);
+        System.err.println("Watching " + root + " for changes of .java files");
+
+        while (!dirs.isEmpty()) {
+            WatchKey key;
+            if (changed.isEmpty())
+                key = watchService.take();
+            else
+                key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+
+            /* Quiet for debounceMillis: compile what has changed so far. */
+            if (key == null) {
+                compile(new ArrayList<>(changed), pool);
+                changed.clear();
+                continue;
+            }
+
+            Path dir = dirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW || dir == null)
+                    continue;
+
+                Path path = dir.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE
+                        && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    registerAll(path, changed);
+                } else if (path.toString().endsWith(".java") && Files.isRegularFile(path)) {
+                    changed.add(path);
+                }
+            }
+
+            /* The directory is gone. */
+            if (!key.reset())
+                dirs.remove(key);
+        }
+
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    private void compile(ArrayList<Path> files, ExecutorService pool) throws InterruptedException {
+        ArrayList<CompileJob> batch = new ArrayList<>();
+        HashMap<CompileJob, Long> savedAt = new HashMap<>();
+
+        for (Path file : files) {
+            CompileJob job;
+            if (pool == null)
+                job = new CompileJob(nextId++, file.toString(), null, System.out, System.err);
+            else
+                job = new CompileJob(nextId++, file.toString(), null);
+            job.setCache(cache);
+            job.setQuiet(quiet);
+            job.setParser(parser);
+            job.setDeclarationsOnly(declarationsOnly);
+            batch.add(job);
+
+            try {
+                savedAt.put(job, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException ex) {
+                /* Deleted since the event, the job reports it. */
+                savedAt.put(job, System.currentTimeMillis());
+            }
+        }
+
+        if (pool == null) {
+            for (CompileJob job : batch) {
+                long start = System.currentTimeMillis();
+                job.run();
+                reportLatency(job, savedAt.get(job), start);
+            }
+        } else {
+            long start = System.currentTimeMillis();
+            CompileBatch.run(batch, pool, job -> {
+                byte[] stdout = job.getOutput();
+                byte[] stderr = job.getErrors();
+                System.out.write(stdout, 0, stdout.length);
+                System.out.flush();
+                System.err.write(stderr, 0, stderr.length);
+                System.err.flush();
+                reportLatency(job, savedAt.get(job), start);
+            });
+        }
+    }
+
+    private void reportLatency(CompileJob job, long savedAt, long startedAt) {
+        long now = System.currentTimeMillis();
+        System.err.println("Watch: " + job.getFilePath() + " " + job.getStatus()
+                + " in " + (now - startedAt) + " ms, " + (now - savedAt)
+                + " ms after save");
+    }
+}
@@ -0,0 +1,507 @@
+package my_ast;
+
+import java.util.Arrays;
+
+import my_types.SymbolPool;
+
+/*
+ * Syntax tree of a program, stored as parallel arrays instead of objects.
+ * A node is an int: the index of its kind, the source offset of its first
+ * token, and two operands, which are child nodes, names or lists depending
+ * on the kind (see the accessors below). Names are the IDs of identifiers
+ * and types in the SymbolPool. Integer literals are not interned, but kept
+ * in the tree, see literal().
+ *
+ * Nodes are made children first, so the last child of most statements and
+ * expressions is the node right before them, and is not stored. Lists, and
+ * the operands of declarations and calls that do not fit in the node, live
+ * in one more int array: a list is the index of its length, followed by
+ * its items.
+ *
+ * Passes walk the tree with node cursors instead of references, see
+ * AstVisitor and AstDepthFirst. A tree is built once, by a Builder, and
+ * never changes afterwards. Trees of declarations only keep no method
+ * bodies, see Builder.skippedBody().
+ */
+
+public final class Ast {
+
+    /* Node kinds */
+    public static final byte PROGRAM = 0;
+    public static final byte MAIN_CLASS = 1;
+    public static final byte CLASS = 2;
+    public static final byte METHOD = 3;
+    public static final byte VAR = 4;
+    public static final byte BLOCK = 5;
+    public static final byte ASSIGN = 6;
+    public static final byte ARRAY_ASSIGN = 7;
+    public static final byte IF = 8;
+    public static final byte WHILE = 9;
+    public static final byte PRINT = 10;
+    public static final byte AND = 11;
+    public static final byte LESS = 12;
+    public static final byte PLUS = 13;
+    public static final byte MINUS = 14;
+    public static final byte TIMES = 15;
+    public static final byte NOT = 16;
+    public static final byte ARRAY_LOOKUP = 17;
+    public static final byte ARRAY_LENGTH = 18;
+    public static final byte CALL = 19;
+    public static final byte INT_LITERAL = 20;
+    public static final byte TRUE = 21;
+    public static final byte FALSE = 22;
+    public static final byte IDENT = 23;
+    public static final byte THIS = 24;
+    public static final byte NEW_ARRAY = 25;
+    public static final byte NEW_OBJECT = 26;
+
+    /* Kinds whose last operand is the node made right before them. */
+    private static final boolean[] LAST_CHILD = new boolean[NEW_OBJECT + 1];
+
+    static {
+        for (byte kind : new byte[] {ASSIGN, ARRAY_ASSIGN, IF, WHILE, PRINT, AND, LESS, PLUS,
+                MINUS, TIMES, NOT, ARRAY_LOOKUP, ARRAY_LENGTH, NEW_ARRAY})
+            LAST_CHILD[kind] = true;
+    }
+
+    /* Number of children of each kind, -1 for those that have a list. */
+    private static final byte[] ARITY = new byte[NEW_OBJECT + 1];
+
+    static {
+        ARITY[BLOCK] = ARITY[CALL] = -1;
+        for (byte kind : new byte[] {ASSIGN, PRINT, NOT, ARRAY_LENGTH, NEW_ARRAY})
+            ARITY[kind] = 1;
+        for (byte kind : new byte[] {ARRAY_ASSIGN, WHILE, AND, LESS, PLUS, MINUS, TIMES, ARRAY_LOOKUP})
+            ARITY[kind] = 2;
+        ARITY[IF] = 3;
+    }
+
+    /* Offset of nodes whose source position is not known. */
+    public static final int NO_POS = -1;
+    /* Name operand of a class without a super class. */
+    public static final int NO_NAME = -1;
+    /* Body operand of a METHOD whose body was skipped. */
+    private static final int SKIPPED = -2;
+
+    private byte[] kinds;
+    private int[] positions;
+    private int[] op0, op1;
+    private int[] extra;
+    private final String[] literals;
+    private int count;
+    private final int root;
+
+    private Ast(Builder b, int root) {
+        count = b.count;
+        kinds = Arrays.copyOf(b.kinds, count);
+        positions = Arrays.copyOf(b.positions, count);
+        op0 = Arrays.copyOf(b.op0, count);
+        op1 = Arrays.copyOf(b.op1, count);
+        extra = Arrays.copyOf(b.extra, b.extraCount);
+        literals = Arrays.copyOf(b.literals, b.literalCount);
+        this.root = root;
+    }
+
+    /* The i-th operand of a METHOD, which has no body if it was skipped. */
+    private int methodOperand(int n, int i) {
+        int operands = op1[n];
+        if (extra[operands + 3] == SKIPPED)
+            throw new IllegalStateException("Body of method " + name(n) + " was skipped");
+        return extra[operands + i];
+    }
+
+    /* The PROGRAM node. */
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int kind(int n) {
+        return kinds[n];
+    }
+
+    /* Source offset of the first token of the node, or NO_POS. */
+    public int pos(int n) {
+        return positions[n];
+    }
+
+    /*
+     * Call the method of the visitor for the kind of a node without
+     * children: a declaration, an empty BLOCK or a leaf expression. Those
+     * of the other statements and expressions take the values of their
+     * children, see AstDepthFirst.
+     */
+    public <R> R accept(int n, AstVisitor<R> v) throws Exception {
+        switch (kinds[n]) {
+            case PROGRAM: return v.visitProgram(n);
+            case MAIN_CLASS: return v.visitMainClass(n);
+            case CLASS: return v.visitClass(n);
+            case METHOD: return v.visitMethod(n);
+            case VAR: return v.visitVar(n);
+            case BLOCK: return v.visitBlock(n);
+            case INT_LITERAL: return v.visitIntLiteral(n);
+            case TRUE:
+            case FALSE: return v.visitBoolLiteral(n);
+            case IDENT: return v.visitIdent(n);
+            case THIS: return v.visitThis(n);
+            case NEW_OBJECT: return v.visitNewObject(n);
+            default: throw new IllegalArgumentException("Node " + n + " has children");
+        }
+    }
+
+    /*
+     * Number of the children of a statement or an expression, in the order
+     * of the accessors: the statements of a BLOCK, the target and arguments
+     * of a CALL, and so on. Declarations and leaves have none.
+     */
+    public int children(int n) {
+        int arity = ARITY[kinds[n]];
+        if (arity >= 0)
+            return arity;
+        return kinds[n] == BLOCK ? length(op0[n]) : 1 + length(args(n));
+    }
+
+    /* The i-th child of a statement or an expression, see children(). */
+    public int child(int n, int i) {
+        byte kind = kinds[n];
+        if (kind == BLOCK)
+            return item(op0[n], i);
+        if (kind == CALL)
+            return i == 0 ? target(n) : item(args(n), i - 1);
+        if (i == ARITY[kind] - 1)
+            return n - 1;
+        return i == 0 && kind != ARRAY_ASSIGN ? op0[n] : op1[n];
+    }
+
+    /* ---------------------------------- Lists --------------------------------- */
+
+    public int length(int list) {
+        return extra[list];
+    }
+
+    public int item(int list, int i) {
+        return extra[list + 1 + i];
+    }
+
+    /* -------------------------------- Operands -------------------------------- */
+
+    /*
+     * Name of a MAIN_CLASS, CLASS, METHOD, VAR, ASSIGN or ARRAY_ASSIGN, the
+     * method of a CALL, the variable of an IDENT and the class of a
+     * NEW_OBJECT.
+     */
+    public String name(int n) {
+        return SymbolPool.name(op0[n]);
+    }
+
+    /* Digits of an INT_LITERAL. */
+    public String literal(int n) {
+        return literals[op0[n]];
+    }
+
+    /* ID of the name of the node, see name(). */
+    public int symbol(int n) {
+        return op0[n];
+    }
+
+    /* Type of a VAR or METHOD: "int", "boolean", "int[]" or a class name. */
+    public String type(int n) {
+        return SymbolPool.name(typeSymbol(n));
+    }
+
+    public int typeSymbol(int n) {
+        return kinds[n] == VAR ? op1[n] : extra[op1[n]];
+    }
+
+    /* Super class of a CLASS, or null. */
+    public String superName(int n) {
+        int name = superSymbol(n);
+        return name == NO_NAME ? null : SymbolPool.name(name);
+    }
+
+    /* ID of the super class of a CLASS, or NO_NAME. */
+    public int superSymbol(int n) {
+        return extra[op1[n]];
+    }
+
+    /* MAIN_CLASS of the PROGRAM. */
+    public int mainClass(int n) {
+        return op0[n];
+    }
+
+    /* List of the CLASS nodes of the PROGRAM. */
+    public int classes(int n) {
+        return op1[n];
+    }
+
+    /* List of the VAR nodes of a CLASS. */
+    public int fields(int n) {
+        return extra[op1[n] + 1];
+    }
+
+    /* List of the METHOD nodes of a CLASS. */
+    public int methods(int n) {
+        return extra[op1[n] + 2];
+    }
+
+    /* List of the parameter VAR nodes of a METHOD. */
+    public int params(int n) {
+        return extra[op1[n] + 1];
+    }
+
+    /* List of the local VAR nodes of a METHOD or the MAIN_CLASS. */
+    public int locals(int n) {
+        return kinds[n] == MAIN_CLASS ? extra[op1[n]] : extra[op1[n] + 2];
+    }
+
+    /*
+     * List of the statements of a METHOD, the MAIN_CLASS or a BLOCK, and
+     * the body statement of a WHILE.
+     */
+    public int body(int n) {
+        switch (kinds[n]) {
+            case MAIN_CLASS: return extra[op1[n] + 1];
+            case METHOD: return methodOperand(n, 3);
+            case BLOCK: return op0[n];
+            default: return n - 1;
+        }
+    }
+
+    /* Return expression of a METHOD. */
+    public int result(int n) {
+        return methodOperand(n, 4);
+    }
+
+    /* Value of an ASSIGN, ARRAY_ASSIGN or PRINT. */
+    public int value(int n) {
+        return n - 1;
+    }
+
+    /* Index of an ARRAY_ASSIGN or ARRAY_LOOKUP. */
+    public int index(int n) {
+        return kinds[n] == ARRAY_ASSIGN ? op1[n] : n - 1;
+    }
+
+    /* Condition of an IF or WHILE. */
+    public int condition(int n) {
+        return op0[n];
+    }
+
+    public int thenStmt(int n) {
+        return op1[n];
+    }
+
+    public int elseStmt(int n) {
+        return n - 1;
+    }
+
+    /* Operands of the binary kinds, AND to TIMES. */
+    public int left(int n) {
+        return op0[n];
+    }
+
+    public int right(int n) {
+        return n - 1;
+    }
+
+    /*
+     * Operand of a NOT, array of an ARRAY_LOOKUP or ARRAY_LENGTH, and size
+     * of a NEW_ARRAY.
+     */
+    public int operand(int n) {
+        return kinds[n] == ARRAY_LOOKUP ? op0[n] : n - 1;
+    }
+
+    /* Object of a CALL. */
+    public int target(int n) {
+        return extra[op1[n]];
+    }
+
+    /* List of the argument expressions of a CALL. */
+    public int args(int n) {
+        return extra[op1[n] + 1];
+    }
+
+    /*
+     * Appends the nodes of a tree, children before parents. Nodes are given
+     * all their operands, in the order of the accessors; for kinds whose
+     * last child is not stored, that child must be the last node made.
+     * Lists are made of the items pushed since a mark(). A builder can be
+     * reused for another tree after build().
+     */
+    public static final class Builder {
+
+        private byte[] kinds = new byte[256];
+        private int[] positions = new int[256];
+        private int[] op0 = new int[256], op1 = new int[256];
+        private int count;
+
+        private int[] extra = new int[256];
+        private int extraCount;
+
+        private String[] literals = new String[64];
+        private int literalCount;
+
+        /* Items of the lists being built, innermost last. */
+        private int[] stack = new int[64];
+        private int stackCount;
+
+        public Builder() {
+            reset();
+        }
+
+        /* Drop the nodes so far. */
+        public void reset() {
+            count = 0;
+            stackCount = 0;
+            /* The shared empty list. */
+            extra[0] = 0;
+            extraCount = 1;
+            Arrays.fill(literals, 0, literalCount, null);
+            literalCount = 0;
+        }
+
+        private int add(byte kind, int pos, int a, int b) {
+            if (count == kinds.length) {
+                int capacity = count * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+                op0 = Arrays.copyOf(op0, capacity);
+                op1 = Arrays.copyOf(op1, capacity);
+            }
+            kinds[count] = kind;
+            positions[count] = pos;
+            op0[count] = a;
+            op1[count] = b;
+            return count++;
+        }
+
+        private void checkLast(int child) {
+            if (child != count - 1)
+                throw new IllegalStateException("Last child " + child + " is not the last node");
+        }
+
+        /* TRUE, FALSE and THIS */
+        public int node(byte kind, int pos) {
+            return add(kind, pos, 0, 0);
+        }
+
+        public int node(byte kind, int pos, int a) {
+            if (!LAST_CHILD[kind])
+                return add(kind, pos, a, 0);
+            checkLast(a);
+            return add(kind, pos, 0, 0);
+        }
+
+        public int node(byte kind, int pos, int a, int b) {
+            if (!LAST_CHILD[kind])
+                return add(kind, pos, a, b);
+            checkLast(b);
+            return add(kind, pos, a, 0);
+        }
+
+        /* IF and ARRAY_ASSIGN */
+        public int node(byte kind, int pos, int a, int b, int c) {
+            checkLast(c);
+            return add(kind, pos, a, b);
+        }
+
+        public int kind(int n) {
+            return kinds[n];
+        }
+
+        /* ID of the name, see SymbolPool. */
+        public int name(String name) {
+            return SymbolPool.intern(name);
+        }
+
+        /* Operand of an INT_LITERAL of the given digits, see literal(). */
+        public int literal(String digits) {
+            if (literalCount == literals.length)
+                literals = Arrays.copyOf(literals, literalCount * 2);
+            literals[literalCount] = digits;
+            return literalCount++;
+        }
+
+        /* Start a list: its items are those pushed from now on. */
+        public int mark() {
+            return stackCount;
+        }
+
+        public void push(int item) {
+            if (stackCount == stack.length)
+                stack = Arrays.copyOf(stack, stackCount * 2);
+            stack[stackCount++] = item;
+        }
+
+        /* End the list started at the mark, and return it. */
+        public int list(int mark) {
+            int length = stackCount - mark;
+            if (length == 0)
+                return 0;
+
+            int list = reserve(length + 1);
+            extra[list] = length;
+            System.arraycopy(stack, mark, extra, list + 1, length);
+            stackCount = mark;
+            return list;
+        }
+
+        /*
+         * Operands of a MAIN_CLASS (locals, body) or a CALL (target, args),
+         * which do not fit in the node.
+         */
+        public int operands(int a, int b) {
+            int operands = reserve(2);
+            extra[operands] = a;
+            extra[operands + 1] = b;
+            return operands;
+        }
+
+        /* Operands of a CLASS: super class name, fields and methods. */
+        public int operands(int superName, int fields, int methods) {
+            int operands = reserve(3);
+            extra[operands] = superName;
+            extra[operands + 1] = fields;
+            extra[operands + 2] = methods;
+            return operands;
+        }
+
+        /* Operands of a METHOD: type, params, locals, body and result. */
+        public int operands(int type, int params, int locals, int body, int result) {
+            int operands = reserve(5);
+            extra[operands] = type;
+            extra[operands + 1] = params;
+            extra[operands + 2] = locals;
+            extra[operands + 3] = body;
+            extra[operands + 4] = result;
+            return operands;
+        }
+
+        /*
+         * Operands of a METHOD whose statements and return expression were
+         * skipped. Asking for its body or result is an error.
+         */
+        public int skippedBody(int type, int params, int locals) {
+            return operands(type, params, locals, SKIPPED, SKIPPED);
+        }
+
+        private int reserve(int length) {
+            if (extraCount + length > extra.length)
+                extra = Arrays.copyOf(extra, Math.max(extra.length * 2, extraCount + length));
+            int index = extraCount;
+            extraCount += length;
+            return index;
+        }
+
+        /* The tree made of the nodes so far, of the given root. */
+        public Ast build(int root) {
+            Ast ast = new Ast(this, root);
+            reset();
+            return ast;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package my_ast;
+
+import java.util.Arrays;
+
+/*
+ * Visits the children of every node in source order, and returns null.
+ * Passes override the nodes they are interested in, as with GJDepthFirst,
+ * and read them through the tree being visited, ast.
+ *
+ * The children of a statement or an expression are all visited before its
+ * visit method, which is given the values of its expressions (those of the
+ * arguments of a CALL through argument()). A pass that has to act before a
+ * child, or between two of them, overrides enter() and visited().
+ *
+ * Statements and expressions nest as deep as the source does: past
+ * MAX_RECURSION levels, they are visited with a stack of their own, in the
+ * heap, instead of the one of the thread.
+ */
+
+public class AstDepthFirst<R> implements AstVisitor<R> {
+
+    protected Ast ast;
+
+    /* Levels of statements and expressions visited on the thread stack. */
+    private static final int MAX_RECURSION = 256;
+
+    /* Statements and expressions walk() is visiting, innermost last. */
+    private int[] nodes = new int[64];
+    /* Number of children, and index of the next one to visit, of each. */
+    private int[] counts = new int[64];
+    private int[] steps = new int[64];
+    private int depth;
+
+    /*
+     * Values of the children visited so far, of the nodes walk() is
+     * visiting, and of the arguments of the calls being visited.
+     */
+    private Object[] values;
+    private int valueCount;
+    /* First argument of the CALL whose visit method runs. */
+    private int argumentBase;
+
+    /* Visit the whole tree. */
+    public R visit(Ast ast) throws Exception {
+        this.ast = ast;
+        values = new Object[64];
+        try {
+            return accept(ast.root());
+        } finally {
+            this.ast = null;
+            values = null;
+            depth = valueCount = 0;
+        }
+    }
+
+    protected R accept(int n) throws Exception {
+        return accept(n, 0);
+    }
+
+    /* Visit a node, level statements and expressions down the thread stack. */
+    private R accept(int n, int level) throws Exception {
+        switch (ast.kind(n)) {
+            case Ast.BLOCK:
+                return block(n, level);
+            case Ast.ASSIGN:
+                enter(n);
+                return visitAssign(n, child(n, 0, ast.value(n), level));
+            case Ast.ARRAY_ASSIGN:
+                enter(n);
+                return visitArrayAssign(n, child(n, 0, ast.index(n), level),
+                        child(n, 1, ast.value(n), level));
+            case Ast.IF:
+                return ifStatement(n, level);
+            case Ast.WHILE:
+                return whileStatement(n, level);
+            case Ast.PRINT:
+                enter(n);
+                return visitPrint(n, child(n, 0, ast.value(n), level));
+            case Ast.AND:
+            case Ast.LESS:
+            case Ast.PLUS:
+            case Ast.MINUS:
+            case Ast.TIMES:
+                enter(n);
+                return visitBinary(n, child(n, 0, ast.left(n), level),
+                        child(n, 1, ast.right(n), level));
+            case Ast.NOT:
+                enter(n);
+                return visitNot(n, child(n, 0, ast.operand(n), level));
+            case Ast.ARRAY_LOOKUP:
+                enter(n);
+                return visitArrayLookup(n, child(n, 0, ast.operand(n), level),
+                        child(n, 1, ast.index(n), level));
+            case Ast.ARRAY_LENGTH:
+                enter(n);
+                return visitArrayLength(n, child(n, 0, ast.operand(n), level));
+            case Ast.CALL:
+                return call(n, level);
+            case Ast.NEW_ARRAY:
+                enter(n);
+                return visitNewArray(n, child(n, 0, ast.operand(n), level));
+            default:
+                return ast.accept(n, this);
+        }
+    }
+
+    /* Visit the i-th child of n, see visited(). */
+    private R child(int n, int i, int child, int level) throws Exception {
+        R value = level < MAX_RECURSION ? accept(child, level + 1) : walk(child);
+        visited(n, i, value);
+        return value;
+    }
+
+    private R block(int n, int level) throws Exception {
+        int body = ast.body(n);
+        int length = ast.length(body);
+        if (length == 0)
+            return visitBlock(n);
+        enter(n);
+        for (int i = 0; i < length; i++)
+            child(n, i, ast.item(body, i), level);
+        return visitBlock(n);
+    }
+
+    private R ifStatement(int n, int level) throws Exception {
+        enter(n);
+        R condition = child(n, 0, ast.condition(n), level);
+        child(n, 1, ast.thenStmt(n), level);
+        child(n, 2, ast.elseStmt(n), level);
+        return visitIf(n, condition);
+    }
+
+    private R whileStatement(int n, int level) throws Exception {
+        enter(n);
+        R condition = child(n, 0, ast.condition(n), level);
+        child(n, 1, ast.body(n), level);
+        return visitWhile(n, condition);
+    }
+
+    private R call(int n, int level) throws Exception {
+        enter(n);
+        R target = child(n, 0, ast.target(n), level);
+        int args = ast.args(n);
+        int base = valueCount;
+        for (int i = 0, length = ast.length(args); i < length; i++)
+            pushValue(child(n, i + 1, ast.item(args, i), level));
+        argumentBase = base;
+        R value = visitCall(n, target);
+        valueCount = base;
+        return value;
+    }
+
+    /*
+     * Visit a statement or an expression, and all the nodes under it,
+     * without recursion.
+     */
+    private R walk(int root) throws Exception {
+        if (ast.children(root) == 0)
+            return ast.accept(root, this);
+        int bottom = depth;
+        push(root);
+
+        while (true) {
+            int top = depth - 1;
+            int n = nodes[top];
+            int i = steps[top];
+
+            if (i < counts[top]) {
+                steps[top] = i + 1;
+                int child = ast.child(n, i);
+                if (ast.children(child) > 0) {
+                    push(child);
+                } else {
+                    R value = ast.accept(child, this);
+                    pushValue(value);
+                    visited(n, i, value);
+                }
+                continue;
+            }
+
+            /* All the children of n are visited, and their values pushed. */
+            int base = valueCount - i;
+            R value = leave(n, base);
+            valueCount = base;
+            depth = top;
+
+            if (depth == bottom)
+                return value;
+            pushValue(value);
+            visited(nodes[top - 1], steps[top - 1] - 1, value);
+        }
+    }
+
+    private void push(int n) throws Exception {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+            steps = Arrays.copyOf(steps, depth * 2);
+        }
+        nodes[depth] = n;
+        counts[depth] = ast.children(n);
+        steps[depth] = 0;
+        depth++;
+        enter(n);
+    }
+
+    private void pushValue(R value) {
+        if (valueCount == values.length)
+            values = Arrays.copyOf(values, valueCount * 2);
+        values[valueCount++] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private R valueAt(int i) {
+        return (R) values[i];
+    }
+
+    /* Call the visit method of n, whose children have their values from base on. */
+    private R leave(int n, int base) throws Exception {
+        switch (ast.kind(n)) {
+            case Ast.BLOCK: return visitBlock(n);
+            case Ast.ASSIGN: return visitAssign(n, valueAt(base));
+            case Ast.ARRAY_ASSIGN: return visitArrayAssign(n, valueAt(base), valueAt(base + 1));
+            case Ast.IF: return visitIf(n, valueAt(base));
+            case Ast.WHILE: return visitWhile(n, valueAt(base));
+            case Ast.PRINT: return visitPrint(n, valueAt(base));
+            case Ast.NOT: return visitNot(n, valueAt(base));
+            case Ast.ARRAY_LOOKUP: return visitArrayLookup(n, valueAt(base), valueAt(base + 1));
+            case Ast.ARRAY_LENGTH: return visitArrayLength(n, valueAt(base));
+            case Ast.CALL:
+                argumentBase = base + 1;
+                return visitCall(n, valueAt(base));
+            case Ast.NEW_ARRAY: return visitNewArray(n, valueAt(base));
+            default: return visitBinary(n, valueAt(base), valueAt(base + 1));
+        }
+    }
+
+    /* Value of the i-th argument of the CALL whose visit method runs. */
+    protected R argument(int i) {
+        return valueAt(argumentBase + i);
+    }
+
+    /*
+     * Called before the children of a statement or an expression that has
+     * some, in source order.
+     */
+    protected void enter(int n) throws Exception {
+    }
+
+    /*
+     * Called after the i-th child of a statement or an expression, in the
+     * order of Ast.child(), with its value, before the next one.
+     */
+    protected void visited(int n, int i, R value) throws Exception {
+    }
+
+    protected void visitAll(int list) throws Exception {
+        for (int i = 0, length = ast.length(list); i < length; i++)
+            accept(ast.item(list, i));
+    }
+
+    public R visitProgram(int n) throws Exception {
+        accept(ast.mainClass(n));
+        visitAll(ast.classes(n));
+        return null;
+    }
+
+    public R visitMainClass(int n) throws Exception {
+        visitAll(ast.locals(n));
+        visitAll(ast.body(n));
+        return null;
+    }
+
+    public R visitClass(int n) throws Exception {
+        visitAll(ast.fields(n));
+        visitAll(ast.methods(n));
+        return null;
+    }
+
+    public R visitMethod(int n) throws Exception {
+        visitAll(ast.params(n));
+        visitAll(ast.locals(n));
+        visitAll(ast.body(n));
+        accept(ast.result(n));
+        return null;
+    }
+
+    public R visitVar(int n) throws Exception {
+        return null;
+    }
+
+    /* Statements and expressions: their children are visited already. */
+
+    public R visitBlock(int n) throws Exception {
+        return null;
+    }
+
+    public R visitAssign(int n, R value) throws Exception {
+        return null;
+    }
+
+    public R visitArrayAssign(int n, R index, R value) throws Exception {
+        return null;
+    }
+
+    public R visitIf(int n, R condition) throws Exception {
+        return null;
+    }
+
+    public R visitWhile(int n, R condition) throws Exception {
+        return null;
+    }
+
+    public R visitPrint(int n, R value) throws Exception {
+        return null;
+    }
+
+    public R visitBinary(int n, R left, R right) throws Exception {
+        return null;
+    }
+
+    public R visitNot(int n, R operand) throws Exception {
+        return null;
+    }
+
+    public R visitArrayLookup(int n, R array, R index) throws Exception {
+        return null;
+    }
+
+    public R visitArrayLength(int n, R array) throws Exception {
+        return null;
+    }
+
+    public R visitCall(int n, R target) throws Exception {
+        return null;
+    }
+
+    public R visitIntLiteral(int n) throws Exception {
+        return null;
+    }
+
+    public R visitBoolLiteral(int n) throws Exception {
+        return null;
+    }
+
+    public R visitIdent(int n) throws Exception {
+        return null;
+    }
+
+    public R visitThis(int n) throws Exception {
+        return null;
+    }
+
+    public R visitNewArray(int n, R size) throws Exception {
+        return null;
+    }
+
+    public R visitNewObject(int n) throws Exception {
+        return null;
+    }
+}
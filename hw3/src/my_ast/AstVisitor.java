@@ -0,0 +1,57 @@
+package my_ast;
+
+/*
+ * Visitor of the nodes of an Ast, one method per kind, see Ast.accept().
+ * Nodes are cursors into the arrays of the tree being visited. Statements
+ * and expressions are given the values of their child expressions, see
+ * AstDepthFirst.
+ */
+
+public interface AstVisitor<R> {
+
+    R visitProgram(int n) throws Exception;
+
+    R visitMainClass(int n) throws Exception;
+
+    R visitClass(int n) throws Exception;
+
+    R visitMethod(int n) throws Exception;
+
+    R visitVar(int n) throws Exception;
+
+    R visitBlock(int n) throws Exception;
+
+    R visitAssign(int n, R value) throws Exception;
+
+    R visitArrayAssign(int n, R index, R value) throws Exception;
+
+    R visitIf(int n, R condition) throws Exception;
+
+    R visitWhile(int n, R condition) throws Exception;
+
+    R visitPrint(int n, R value) throws Exception;
+
+    /* AND, LESS, PLUS, MINUS and TIMES */
+    R visitBinary(int n, R left, R right) throws Exception;
+
+    R visitNot(int n, R operand) throws Exception;
+
+    R visitArrayLookup(int n, R array, R index) throws Exception;
+
+    R visitArrayLength(int n, R array) throws Exception;
+
+    R visitCall(int n, R target) throws Exception;
+
+    R visitIntLiteral(int n) throws Exception;
+
+    /* TRUE and FALSE */
+    R visitBoolLiteral(int n) throws Exception;
+
+    R visitIdent(int n) throws Exception;
+
+    R visitThis(int n) throws Exception;
+
+    R visitNewArray(int n, R size) throws Exception;
+
+    R visitNewObject(int n) throws Exception;
+}
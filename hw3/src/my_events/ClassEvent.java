@@ -0,0 +1,29 @@
+package my_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("minijava.Class")
+@Label("Class Visit")
+@Category("MiniJava")
+@Description("Visit of one class declaration by a compiler pass")
+public class ClassEvent extends Event {
+
+    @Label("Class")
+    public String className;
+
+    @Label("Pass")
+    public String pass;
+
+    /* Fill in and commit the event, only if it is being recorded. */
+    public void commit(String className, String pass) {
+        if (shouldCommit()) {
+            this.className = className;
+            this.pass = pass;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package my_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("minijava.FileCompile")
+@Label("Compile File")
+@Category("MiniJava")
+@Description("Whole pipeline of one MiniJava file, from parsing to IR")
+public class FileCompileEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Status")
+    public String status;
+
+    @Label("Cache")
+    public String cache;
+}
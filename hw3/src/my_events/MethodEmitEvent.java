@@ -0,0 +1,33 @@
+package my_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("minijava.MethodEmit")
+@Label("Method IR Emission")
+@Category("MiniJava")
+@Description("LLVM IR generation of one method")
+public class MethodEmitEvent extends Event {
+
+    @Label("Class")
+    public String className;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Instructions")
+    public int instructions;
+
+    /* Fill in and commit the event, only if it is being recorded. */
+    public void commit(String className, String method, int instructions) {
+        if (shouldCommit()) {
+            this.className = className;
+            this.method = method;
+            this.instructions = instructions;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package my_events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("minijava.Pass")
+@Label("Compiler Pass")
+@Category("MiniJava")
+@Description("One phase of the pipeline: parse, a visitor pass or report printing")
+public class PassEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Pass")
+    public String pass;
+}
@@ -1,6 +1,9 @@
 package my_types;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static my_types.EntryType.*;
 
@@ -9,7 +12,24 @@ public class ClassEntry extends Entry {
     private final SymbolTable fields;
     private final SymbolTable methods;
     private final ClassEntry superClass;
-    private final ArrayList<EntryOffset> entryOffsets = new ArrayList<>();
+    /*
+     * Fields and methods of the class and of its super classes, see
+     * resolveMembers(). They are not changed afterwards.
+     */
+    private SymbolTable allFields;
+    private SymbolTable allMethods;
+    /* Whether this is the main class, whose static main is not inherited. */
+    private boolean mainClass = false;
+    private ClassLayout layout;
+    private final Type type = Type.of(this);
+    private final ArrayList<ClassEntry> subclasses = new ArrayList<>();
+    /*
+     * Numbers of the class when a depth-first walk of the hierarchy enters
+     * and leaves it, see numberHierarchy(): the classes entered in between
+     * are its subclasses.
+     */
+    private int pre = -1;
+    private int post = -1;
 
     public ClassEntry(Entry parent, int id, String name, SymbolTable fields,
                       SymbolTable methods) {
@@ -25,6 +45,7 @@ public class ClassEntry extends Entry {
         this.fields = fields;
         this.methods = methods;
         this.superClass = superClass;
+        superClass.subclasses.add(this);
     }
 
     public SymbolTable getFields() {
@@ -39,57 +60,39 @@ public class ClassEntry extends Entry {
         return superClass;
     }
 
-    public ArrayList<EntryOffset> getEntryOffsets() {
-        return entryOffsets;
+    /* The type of the objects of the class. */
+    public Type getType() {
+        return type;
     }
 
     public EntryType getEntryType() {
         return CLASS_ENTRY;
     }
 
-    public int getNextVarByte() {
-        int nextByte = 0;
-        for (EntryOffset eo : entryOffsets)
-            if (eo.getEntry().getEntryType() == VAR_ENTRY)
-                nextByte = eo.getOffset() + eo.getEntry().getBytes();
-        return nextByte;
+    /* Mark the class as the main class, before its members are resolved. */
+    public void setMainClass() {
+        mainClass = true;
     }
 
-    public int getNextMethodByte() {
-        int nextByte = 0;
-        for (EntryOffset eo : entryOffsets)
-            if (eo.getEntry().getEntryType() == METHOD_ENTRY)
-                nextByte = eo.getOffset() + eo.getEntry().getBytes();
-        return nextByte;
+    /*
+     * Methods of the class and of its super classes that objects of the
+     * class dispatch through a vtable, see resolveMembers(). None for the
+     * main class.
+     */
+    List<Entry> getVirtualMethods() {
+        return mainClass ? List.of() : allMethods.getEntries();
     }
 
-    public void makeOffsets() {
-        EntryOffset newEO;
-        ArrayList<Entry> entries;
-        int vOffset = 0, mOffset = 0;
-        if (superClass != null) {
-            vOffset = superClass.getNextVarByte();
-            mOffset = superClass.getNextMethodByte();
-        }
-
-        entries = fields.getEntries();
-        for (Entry e : entries) {
-            newEO = new EntryOffset(e, vOffset);
-            entryOffsets.add(newEO);
-            vOffset += e.getBytes();
-        }
-
-        entries = methods.getEntries();
-        for (Entry e : entries) {
-            /* Ignore override methods. */
-            if (superClass != null)
-                if (superClass.lookup(e.getName(), METHOD_ENTRY) != null)
-                    continue;
+    /*
+     * Lay out the objects and the vtable of the class, once its members
+     * are resolved and its super class is laid out.
+     */
+    public void makeLayout() {
+        layout = new ClassLayout(this, superClass == null ? null : superClass.layout);
+    }
 
-            newEO = new EntryOffset(e, mOffset);
-            entryOffsets.add(newEO);
-            mOffset += e.getBytes();
-        }
+    public ClassLayout getLayout() {
+        return layout;
     }
 
     public void insertField(Entry e) {
@@ -100,43 +103,89 @@ public class ClassEntry extends Entry {
         methods.insert(e);
     }
 
-    public Entry lookup(String name, EntryType entryType) {
-        Entry entry = null;
+    /*
+     * Flatten the members of the class into the tables of its super class,
+     * which must be resolved already, once the class is declared. Inherited
+     * members keep the order of the super class, and the ones the class
+     * declares again take their place. The main of the main class is not
+     * inherited.
+     */
+    public void resolveMembers() {
+        allFields = flatten(fields, superClass == null ? null : superClass.allFields);
+        allMethods = flatten(methods, superClass == null || superClass.mainClass ? null
+                : superClass.allMethods);
+    }
+
+    /* The tables are shared when one of them is empty. */
+    private SymbolTable flatten(SymbolTable own, SymbolTable inherited) {
+        if (inherited == null || inherited.size() == 0)
+            return own;
+        if (own == null || own.size() == 0)
+            return inherited;
+
+        SymbolTable all = new SymbolTable(getName(), inherited);
+        for (Entry e : own.getEntries())
+            all.insert(e);
+        return all;
+    }
 
+    /* The member of the class or of a super class, once resolved. */
+    public Entry lookup(int symbol, EntryType entryType) {
         switch (entryType) {
             case VAR_ENTRY:
-                if (fields != null)
-                    entry = fields.get(name);
-                break;
+                return allFields != null ? allFields.get(symbol) : null;
             case METHOD_ENTRY:
-                entry = methods.get(name);
-                break;
-            case CLASS_ENTRY:
+                return allMethods.get(symbol);
+            default:
                 System.err.println("MY_ERROR: ClassEntry.lookup "
                         + " - wrong EntryType");
                 return null;
         }
-
-        if (entry != null)
-            return entry;
-
-        if (superClass != null)
-            return superClass.lookup(name, entryType);
-
-        return entry;
     }
 
-    public boolean inherits(String name) {
-        if (superClass == null)
-            return false;
-
-        if (superClass.getName().equals(name)) {
-            return true;
-        } else {
-            return superClass.inherits(name);
+    /*
+     * Number the classes of a program, once they are all declared. The
+     * walk keeps its own stack, since hierarchies can be thousands of
+     * classes deep.
+     */
+    public static void numberHierarchy(List<Entry> classes) {
+        ClassEntry[] stack = new ClassEntry[16];
+        int[] nextSubclass = new int[16];
+        int counter = 0;
+
+        for (Entry e : classes) {
+            ClassEntry root = (ClassEntry) e;
+            if (root.superClass != null)
+                continue;
+
+            int depth = 0;
+            stack[0] = root;
+            nextSubclass[0] = 0;
+            root.pre = counter++;
+            while (depth >= 0) {
+                ClassEntry ce = stack[depth];
+                if (nextSubclass[depth] < ce.subclasses.size()) {
+                    ClassEntry sub = ce.subclasses.get(nextSubclass[depth]++);
+                    sub.pre = counter++;
+                    if (++depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                        nextSubclass = Arrays.copyOf(nextSubclass, depth * 2);
+                    }
+                    stack[depth] = sub;
+                    nextSubclass[depth] = 0;
+                } else {
+                    ce.post = counter++;
+                    depth--;
+                }
+            }
         }
     }
 
+    /* Whether the class is the given one or one of its subclasses. */
+    public boolean isSubclassOf(ClassEntry ce) {
+        return ce.pre <= pre && post <= ce.post;
+    }
+
     public void print() {
         String buffer = "[" + getId() + "] > " + getName();
         if (superClass != null)
@@ -144,22 +193,18 @@ public class ClassEntry extends Entry {
         System.out.println(buffer);
     }
 
-    public void print(String prevScope) {
+    public void print(PrintStream out, String prevScope) {
         String buffer = "[" + getId() + "] > " + prevScope + getName();
         if (superClass != null)
             buffer += " extends '" + superClass.getName() + "'";
-        System.out.println(buffer);
+        out.println(buffer);
 
         if (fields != null)
-            fields.print(prevScope);
-        methods.print(prevScope);
+            fields.print(out, prevScope);
+        methods.print(out, prevScope);
     }
 
-    public void printOffsets() {
-        for (EntryOffset eo : entryOffsets) {
-            Entry entry = eo.getEntry();
-            System.out.println(entry.getParent().getName() + "." + entry.getName()
-                    + ": " + eo.getOffset());
-        }
+    public void printOffsets(PrintStream out) {
+        layout.print(out, getName());
     }
 }
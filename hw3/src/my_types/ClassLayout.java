@@ -0,0 +1,77 @@
+package my_types;
+
+import java.io.PrintStream;
+import java.util.List;
+
+
+/*
+ * Layout of the objects of a class and of its vtable, built once per class
+ * after the layout of its super class, see ClassEntry.makeLayout(). Fields
+ * follow those of the super class. The vtable is the one of the super
+ * class, with the methods the class overrides in their slots, and the new
+ * ones after it.
+ */
+
+public final class ClassLayout {
+
+    /* Bytes of a vtable slot. */
+    public static final int SLOT_BYTES = 8;
+
+    private final List<Entry> fields;
+    private final int[] fieldOffsets;
+    private final int size;
+    private final List<Entry> vtable;
+    private final int inheritedSlots;
+
+    ClassLayout(ClassEntry ce, ClassLayout superLayout) {
+        int offset = superLayout == null ? 0 : superLayout.size;
+        if (ce.getFields() == null) {
+            fields = List.of();
+            fieldOffsets = new int[0];
+        } else {
+            fields = ce.getFields().getEntries();
+            fieldOffsets = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                fieldOffsets[i] = offset;
+                offset += fields.get(i).getBytes();
+            }
+        }
+        size = offset;
+
+        vtable = ce.getVirtualMethods();
+        inheritedSlots = superLayout == null ? 0 : superLayout.vtable.size();
+    }
+
+    /* Fields the class declares, see getFieldOffset(). */
+    public List<Entry> getFields() {
+        return fields;
+    }
+
+    /* Offset of the i-th field the class declares, after the vtable pointer. */
+    public int getFieldOffset(int i) {
+        return fieldOffsets[i];
+    }
+
+    /* Bytes of the fields of an object, inherited ones included. */
+    public int getSize() {
+        return size;
+    }
+
+    /* Methods by vtable slot. */
+    public List<Entry> getVTable() {
+        return vtable;
+    }
+
+    /* Slots of the super class, the slots of new methods come after them. */
+    public int getInheritedSlots() {
+        return inheritedSlots;
+    }
+
+    /* Offsets of the fields and the new methods the class declares. */
+    public void print(PrintStream out, String className) {
+        for (int i = 0; i < fields.size(); i++)
+            out.println(className + "." + fields.get(i).getName() + ": " + fieldOffsets[i]);
+        for (int slot = inheritedSlots; slot < vtable.size(); slot++)
+            out.println(className + "." + vtable.get(slot).getName() + ": " + slot * SLOT_BYTES);
+    }
+}
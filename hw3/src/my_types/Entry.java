@@ -1,15 +1,19 @@
 package my_types;
 
+import java.io.PrintStream;
+
 public abstract class Entry implements Comparable<Entry> {
 
     private final Entry parent;
     private final int id;
     private final String name;
+    private final int symbol;
 
     public Entry(Entry parent, int id, String name) {
         this.parent = parent;
         this.id = id;
         this.name = name;
+        this.symbol = SymbolPool.intern(name);
     }
 
     public Entry getParent() {
@@ -24,12 +28,23 @@ public abstract class Entry implements Comparable<Entry> {
         return name;
     }
 
+    /* ID of the name, see SymbolPool. */
+    public int getSymbol() {
+        return symbol;
+    }
+
     /* Overridden method. Never used. */
-    public String getType() {
+    public Type getType() {
         System.err.println("Error: Entry.getType()");
         return null;
     }
 
+    /* Overridden method. Never used. */
+    public int getTypeSymbol() {
+        System.err.println("Error: Entry.getTypeSymbol()");
+        return -1;
+    }
+
     /* Overridden method. Never used. */
     public int getBytes() {
         System.err.println("Error: Entry.getBytes() or ClassEntry.getBytes()");
@@ -63,13 +78,13 @@ public abstract class Entry implements Comparable<Entry> {
     }
 
     /* Overridden method. Never used. */
-    public Entry lookup(String name, EntryType entryType) {
+    public Entry lookup(int symbol, EntryType entryType) {
         System.err.println("Error: Entry.lookup()");
         return null;
     }
 
     /* Overridden method. Never used. */
-    public Entry lookupForUse(String name, EntryType entryType) {
+    public Entry lookupForUse(int symbol, EntryType entryType) {
         System.err.println("Error: Entry.lookup()");
         return null;
     }
@@ -98,21 +113,15 @@ public abstract class Entry implements Comparable<Entry> {
         return false;
     }
 
-    /* Overridden method. Never used. */
-    public boolean isBasicType() {
-        System.err.println("Error: Entry.isBasicType()");
-        return false;
-    }
-
     public void print() {
         System.out.println("[" + id + "] > " + name);
     }
 
-    public void print(String prevScope) {
-        System.out.println("[" + id + "] > " + prevScope + " :: " + name);
+    public void print(PrintStream out, String prevScope) {
+        out.println("[" + id + "] > " + prevScope + " :: " + name);
     }
 
-    public void printOffsets() {
+    public void printOffsets(PrintStream out) {
         /* Overridden method. Used only by ClassEntry. */
         System.err.println("Error: Entry.printOffsets()");
     }
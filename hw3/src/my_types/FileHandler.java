@@ -1,5 +1,7 @@
 package my_types;
 
+import java.io.PrintStream;
+
 public class FileHandler {
 
     private final int maxCols = 60;
@@ -43,18 +45,18 @@ public class FileHandler {
                 filePath.lastIndexOf('.'));
     }
 
-    public void printTitleSep() {
+    public void printTitleSep(PrintStream out) {
         StringBuilder sep = new StringBuilder();
         sep.append(sepChar.repeat(10));
         sep.append(" File #").append(id).append(": ");
         sep.append(this.getFileNameExt()).append(" ");
         sep.append(sepChar.repeat(maxCols - sep.length()));
-        System.out.println(sep);
+        out.println(sep);
     }
 
-    public void printSep() {
+    public void printSep(PrintStream out) {
         StringBuilder sep = new StringBuilder();
         sep.append(sepChar.repeat(maxCols - sep.length()));
-        System.out.println(sep);
+        out.println(sep);
     }
 }
@@ -1,27 +1,41 @@
 package my_types;
 
-import java.util.ArrayList;
+import java.io.PrintStream;
+import java.util.List;
 
 import static my_types.EntryType.*;
 
 public class MethodEntry extends Entry {
 
-    private final String returnType;
+    private final String returnTypeName;
+    private final int returnSymbol;
+    /* Basic types are known right away, classes at the end of the first pass. */
+    private Type returnType;
     private final SymbolTable params;
     private final SymbolTable locals;
 
-    public MethodEntry(Entry parent, int id, String name, String returnType,
+    public MethodEntry(Entry parent, int id, String name, String returnTypeName,
                        SymbolTable params, SymbolTable locals) {
         super(parent, id, name);
-        this.returnType = returnType;
+        this.returnTypeName = returnTypeName;
+        this.returnSymbol = SymbolPool.intern(returnTypeName);
+        this.returnType = Type.basic(returnSymbol);
         this.params = params;
         this.locals = locals;
     }
 
-    public String getType() {
+    public Type getType() {
         return returnType;
     }
 
+    public void setType(Type returnType) {
+        this.returnType = returnType;
+    }
+
+    public int getTypeSymbol() {
+        return returnSymbol;
+    }
+
     public SymbolTable getParams() {
         return params;
     }
@@ -31,7 +45,7 @@ public class MethodEntry extends Entry {
     }
 
     public int getBytes() {
-        return 8;
+        return ClassLayout.SLOT_BYTES;
     }
 
     public EntryType getEntryType() {
@@ -46,13 +60,13 @@ public class MethodEntry extends Entry {
         locals.insert(e);
     }
 
-    public Entry lookup(String name, EntryType entryType) {
+    public Entry lookup(int symbol, EntryType entryType) {
         Entry entry;
 
         if (entryType == VAR_ENTRY) {
-            entry = params.get(name);
+            entry = params.get(symbol);
             if (entry == null)
-                entry = locals.get(name);
+                entry = locals.get(symbol);
         } else {
             System.err.println("MY_ERROR: MethodEntry.lookup - wrong EntryType");
             return null;
@@ -61,19 +75,19 @@ public class MethodEntry extends Entry {
         return entry;
     }
 
-    public Entry lookupForUse(String name, EntryType entryType) {
+    public Entry lookupForUse(int symbol, EntryType entryType) {
         Entry entry = null;
 
         switch (entryType) {
             case VAR_ENTRY:
-                entry = params.get(name);
+                entry = params.get(symbol);
                 if (entry == null)
-                    entry = locals.get(name);
+                    entry = locals.get(symbol);
                 if (entry == null)
-                    entry = this.getParent().lookup(name, entryType);
+                    entry = this.getParent().lookup(symbol, entryType);
                 break;
             case METHOD_ENTRY:
-                entry = this.getParent().lookup(name, entryType);
+                entry = this.getParent().lookup(symbol, entryType);
                 break;
             case CLASS_ENTRY:
                 System.err.println("MY_ERROR: MethodEntry.lookupForUse "
@@ -85,11 +99,11 @@ public class MethodEntry extends Entry {
     }
 
     public boolean matches(MethodEntry me) {
-        if (!returnType.equals(me.getType()))
+        if (returnSymbol != me.getTypeSymbol())
             return false;
 
-        ArrayList<Entry> params1 = this.getParams().getEntries();
-        ArrayList<Entry> params2 = me.getParams().getEntries();
+        List<Entry> params1 = this.getParams().getEntries();
+        List<Entry> params2 = me.getParams().getEntries();
         if (params1.size() != params2.size())
             return false;
 
@@ -100,46 +114,29 @@ public class MethodEntry extends Entry {
         return true;
     }
 
-    public boolean matchArgs(ArrayList<VarEntry> arguments) {
-        ArrayList<Entry> params = this.getParams().getEntries();
+    /* Whether arguments of the given types can be passed to the method. */
+    public boolean matchArgs(Type[] arguments) {
+        List<Entry> params = this.getParams().getEntries();
 
-        if (params.size() != arguments.size())
+        if (params.size() != arguments.length)
             return false;
 
-        for (int i = 0; i < params.size(); i++) {
-            VarEntry param = (VarEntry) params.get(i);
-            VarEntry argum = arguments.get(i);
-
-            if (param.isBasicType() || argum.isBasicType()) {
-                if (!param.matches(argum)) {
-                    return false;
-                }
-            } else {
-                if (!param.matches(argum)) {
-                    if (!argum.subTypes(param)) {
-                        return false;
-                    }
-                }
-            }
-        }
+        for (int i = 0; i < params.size(); i++)
+            if (!arguments[i].isAssignableTo(params.get(i).getType()))
+                return false;
 
         return true;
     }
 
-    public boolean isBasicType() {
-        return (returnType.equals("int") || returnType.equals("boolean")
-                || returnType.equals("int[]") || returnType.equals("boolean[]"));
-    }
-
     public void print() {
-        System.out.println("[" + getId() + "] > " + returnType
+        System.out.println("[" + getId() + "] > " + returnTypeName
                 + " " + getName());
     }
 
-    public void print(String prevScope) {
-        System.out.println("[" + getId() + "] > " + prevScope
-                + returnType + " " + getName());
-        params.print(prevScope);
-        locals.print(prevScope);
+    public void print(PrintStream out, String prevScope) {
+        out.println("[" + getId() + "] > " + prevScope
+                + returnTypeName + " " + getName());
+        params.print(out, prevScope);
+        locals.print(out, prevScope);
     }
 }
@@ -0,0 +1,65 @@
+package my_types;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/*
+ * Pool of the names of all the files compiled by the process: identifiers
+ * and type names. Every name is interned once, when it is lexed, and gets
+ * a dense int ID, so that the passes compare and look up names by ID
+ * instead of hashing Strings. IDs stay valid for the lifetime of the
+ * process and are shared by every compiler thread.
+ *
+ * Names are never dropped: a long-lived process, such as --server or
+ * --watch, keeps every distinct identifier it has compiled. Programs reuse
+ * most of their names, so the pool grows with the vocabulary of the files,
+ * not with their number. Integer literals, which need no lookups, are kept
+ * in their trees instead, see Ast.literal().
+ *
+ * Interning a known name only reads a ConcurrentHashMap; new names are
+ * added under a lock. name() is a plain array read.
+ */
+
+public final class SymbolPool {
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    /* Names by ID, replaced by a larger copy when full. */
+    private static volatile String[] names = new String[1024];
+    private static int count = 0;
+
+    /* Names of the basic types, and of the main method. */
+    public static final int INT = intern("int");
+    public static final int BOOLEAN = intern("boolean");
+    public static final int INT_ARRAY = intern("int[]");
+    public static final int BOOLEAN_ARRAY = intern("boolean[]");
+    public static final int VOID = intern("void");
+    public static final int MAIN = intern("main");
+
+    private SymbolPool() {
+    }
+
+    public static int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+
+        synchronized (SymbolPool.class) {
+            id = ids.get(name);
+            if (id != null)
+                return id;
+
+            /* The name is stored before its ID is published. */
+            String[] table = names;
+            if (count == table.length)
+                names = table = Arrays.copyOf(table, count * 2);
+            table[count] = name;
+            ids.put(name, count);
+            return count++;
+        }
+    }
+
+    public static String name(int id) {
+        return names[id];
+    }
+}
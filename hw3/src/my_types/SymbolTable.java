@@ -1,53 +1,121 @@
 package my_types;
 
+import java.io.PrintStream;
 import java.util.*;
 
 
+/*
+ * Entries of a scope by the ID of their name, see SymbolPool, kept in the
+ * order they are inserted, which is the order of their Entry IDs. Entries
+ * are stored in an array in that order, and found through an open
+ * addressing table of indices into it (linear probing, at most half full).
+ * Tables are filled by the first pass and only read afterwards; they are
+ * not synchronized.
+ */
+
 public class SymbolTable {
 
+    private static final int MIN_SLOTS = 8;
+
     private final String scope;
-    private final Hashtable<String, Entry> table = new Hashtable<>();
+    /* Entries in insertion order. */
+    private Entry[] entries = new Entry[MIN_SLOTS / 2];
+    private int size;
+    /* Index + 1 in entries of the entry of each slot, 0 for free slots. */
+    private int[] slots = new int[MIN_SLOTS];
+    private final List<Entry> view = new EntryList();
 
     public SymbolTable(String scope) {
         this.scope = scope;
     }
 
+    /* A table with the entries of the given one, to insert more into. */
+    public SymbolTable(String scope, SymbolTable entries) {
+        this.scope = scope;
+        this.entries = entries.entries.clone();
+        this.size = entries.size;
+        this.slots = entries.slots.clone();
+    }
+
     public String getScope() {
         return scope;
     }
 
-    public ArrayList<Entry> getEntries() {
-        Set<String> keys = table.keySet();
-        ArrayList<Entry> entries = new ArrayList<>();
-        for (String key : keys) {
-            entries.add(table.get(key));
-        }
-        Collections.sort(entries);
-        return entries;
+    /* Read-only view of the entries, in order, which follows insert(). */
+    public List<Entry> getEntries() {
+        return view;
     }
 
+    /* Top log2(slots) bits of the Fibonacci hash, so that every slot is used. */
+    private static int hash(int symbol, int mask) {
+        return symbol * 0x9E3779B9 >>> Integer.numberOfLeadingZeros(mask);
+    }
+
+    /* Slot of the symbol, or the free slot it would go in. */
+    private int slot(int symbol) {
+        int mask = slots.length - 1;
+        int slot = hash(symbol, mask);
+        while (slots[slot] != 0 && entries[slots[slot] - 1].getSymbol() != symbol)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /* Insert the entry, or replace the one of the same name in place. */
     public void insert(Entry e) {
-        table.put(e.getName(), e);
+        int slot = slot(e.getSymbol());
+        if (slots[slot] != 0) {
+            entries[slots[slot] - 1] = e;
+            return;
+        }
+
+        if (size == entries.length)
+            entries = Arrays.copyOf(entries, size * 2);
+        entries[size++] = e;
+        slots[slot] = size;
+        if (size * 2 > slots.length)
+            rehash();
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(entries[i].getSymbol(), mask);
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = i + 1;
+        }
     }
 
-    public boolean contains(String name) {
-        return table.containsKey(name);
+    public boolean contains(int symbol) {
+        return slots[slot(symbol)] != 0;
     }
 
-    public Entry get(String key) {
-        return table.get(key);
+    public Entry get(int symbol) {
+        int index = slots[slot(symbol)];
+        return index != 0 ? entries[index - 1] : null;
     }
 
     public int size() {
-        return table.size();
+        return size;
     }
 
-    public void print(String prevScope) {
+    public void print(PrintStream out, String prevScope) {
         prevScope += scope + " :: ";
 
-        ArrayList<Entry> entries = getEntries();
-        for (Entry e : entries)
-            e.print(prevScope);
+        for (int i = 0; i < size; i++)
+            entries[i].print(out, prevScope);
     }
-}
 
+    private final class EntryList extends AbstractList<Entry> implements RandomAccess {
+
+        public Entry get(int index) {
+            Objects.checkIndex(index, size);
+            return entries[index];
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package my_types;
+
+
+/*
+ * Canonical types: one object per basic type, and one per class, see
+ * ClassEntry.getType(), so that types are compared by identity. A name that
+ * is not a declared class gets a type of its own per file, with no class,
+ * see FirstPassVisitor. Every type knows its size in an object or a
+ * stack frame, and its LLVM IR type.
+ */
+
+public final class Type {
+
+    public static final Type INT = new Type(SymbolPool.INT, 4, "i32", null);
+    public static final Type BOOLEAN = new Type(SymbolPool.BOOLEAN, 1, "i1", null);
+    public static final Type INT_ARRAY = new Type(SymbolPool.INT_ARRAY, 8, "i32*", null);
+    public static final Type BOOLEAN_ARRAY = new Type(SymbolPool.BOOLEAN_ARRAY, 8, "i8*", null);
+    /* Return type of main, which is static and never in a vtable. */
+    public static final Type VOID = new Type(SymbolPool.VOID, 0, "i8*", null);
+
+    private final int symbol;
+    private final int bytes;
+    private final String irType;
+    private final ClassEntry classEntry;
+
+    private Type(int symbol, int bytes, String irType, ClassEntry classEntry) {
+        this.symbol = symbol;
+        this.bytes = bytes;
+        this.irType = irType;
+        this.classEntry = classEntry;
+    }
+
+    /* The type of objects of the class. */
+    static Type of(ClassEntry ce) {
+        return new Type(ce.getSymbol(), 8, "i8*", ce);
+    }
+
+    /* The type of a name that is not a declared class. */
+    public static Type undeclared(int symbol) {
+        return new Type(symbol, 8, "i8*", null);
+    }
+
+    /* The basic type of the given name, or null. */
+    public static Type basic(int symbol) {
+        if (symbol == SymbolPool.INT)
+            return INT;
+        if (symbol == SymbolPool.BOOLEAN)
+            return BOOLEAN;
+        if (symbol == SymbolPool.INT_ARRAY)
+            return INT_ARRAY;
+        if (symbol == SymbolPool.BOOLEAN_ARRAY)
+            return BOOLEAN_ARRAY;
+        if (symbol == SymbolPool.VOID)
+            return VOID;
+        return null;
+    }
+
+    /* ID of the name, see SymbolPool. */
+    public int getSymbol() {
+        return symbol;
+    }
+
+    public String getName() {
+        return SymbolPool.name(symbol);
+    }
+
+    public int getBytes() {
+        return bytes;
+    }
+
+    public String getIRType() {
+        return irType;
+    }
+
+    /* The class of the type, null for basic types and undeclared names. */
+    public ClassEntry getClassEntry() {
+        return classEntry;
+    }
+
+    public boolean isBasic() {
+        return basic(symbol) == this;
+    }
+
+    /* Whether a value of this type can be used where the given one is expected. */
+    public boolean isAssignableTo(Type type) {
+        if (this == type)
+            return true;
+        if (classEntry == null || type.getClassEntry() == null)
+            return false;
+        return classEntry.isSubclassOf(type.getClassEntry());
+    }
+
+    public String toString() {
+        return getName();
+    }
+}
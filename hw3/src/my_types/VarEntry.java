@@ -1,39 +1,37 @@
 package my_types;
 
+import java.io.PrintStream;
+
 import static my_types.EntryType.VAR_ENTRY;
 
 public class VarEntry extends Entry {
 
-    private final String type;
-    private ClassEntry classType;
+    private final String typeName;
+    private final int typeSymbol;
+    /* Basic types are known right away, classes at the end of the first pass. */
+    private Type type;
 
-    public VarEntry(Entry parent, int id, String name, String type) {
+    public VarEntry(Entry parent, int id, String name, String typeName) {
         super(parent, id, name);
-        this.type = type;
-        this.classType = null;
+        this.typeName = typeName;
+        this.typeSymbol = SymbolPool.intern(typeName);
+        this.type = Type.basic(typeSymbol);
     }
 
-    public String getType() {
+    public Type getType() {
         return type;
     }
 
-    public ClassEntry getClassType() {
-        return classType;
+    public void setType(Type type) {
+        this.type = type;
     }
 
-    public void setClassType(ClassEntry classType) {
-        this.classType = classType;
+    public int getTypeSymbol() {
+        return typeSymbol;
     }
 
     public int getBytes() {
-        if (type.equals("int")) {
-            return 4;
-        } else if (type.equals("boolean")) {
-            return 1;
-        } else {
-            /* int[], boolean[], class obj */
-            return 8;
-        }
+        return type.getBytes();
     }
 
     public EntryType getEntryType() {
@@ -45,26 +43,15 @@ public class VarEntry extends Entry {
     }
 
     public boolean matches(VarEntry ve) {
-        return type.equals(ve.getType());
-    }
-
-    public boolean subTypes(VarEntry ve) {
-        if (classType == null)
-            return false;
-        return classType.inherits(ve.getType());
-    }
-
-    public boolean isBasicType() {
-        return (type.equals("int") || type.equals("boolean")
-                || type.equals("int[]") || type.equals("boolean[]"));
+        return typeSymbol == ve.getTypeSymbol();
     }
 
     public void print() {
-        System.out.println("[" + getId() + "] > " + type);
+        System.out.println("[" + getId() + "] > " + typeName);
     }
 
-    public void print(String prevScope) {
-        System.out.println("[" + getId() + "] > " + prevScope
-                + type + " " + getName());
+    public void print(PrintStream out, String prevScope) {
+        out.println("[" + getId() + "] > " + prevScope
+                + typeName + " " + getName());
     }
 }
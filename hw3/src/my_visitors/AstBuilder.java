@@ -0,0 +1,387 @@
+package my_visitors;
+
+import my_ast.Ast;
+import syntaxtree.*;
+import visitor.GJNoArguDepthFirst;
+
+
+/*
+ * Lowers the tree of the JavaCC parser to the flat Ast the passes run on.
+ * Nodes are returned as Integers, identifiers and types as Strings; the
+ * nodes of a Goal have no source offsets. Choices, statements and clauses
+ * pass through.
+ */
+
+public class AstBuilder extends GJNoArguDepthFirst<Object> {
+
+    private final Ast.Builder builder = new Ast.Builder();
+
+    public Ast build(Goal root) throws Exception {
+        return builder.build(node(root));
+    }
+
+    private int name(Identifier n) {
+        return builder.name(n.f0.toString());
+    }
+
+    private int node(Node n) throws Exception {
+        return (Integer) n.accept(this);
+    }
+
+    private int list(NodeListOptional n) throws Exception {
+        int mark = builder.mark();
+        for (int i = 0; i < n.size(); i++)
+            builder.push(node(n.elementAt(i)));
+        return builder.list(mark);
+    }
+
+    private int node(byte kind, int a, int b, int c) {
+        return builder.node(kind, Ast.NO_POS, a, b, c);
+    }
+
+    private int node(byte kind, int a, int b) {
+        return builder.node(kind, Ast.NO_POS, a, b);
+    }
+
+    private int node(byte kind, int a) {
+        return builder.node(kind, Ast.NO_POS, a);
+    }
+
+    /* ------------------------------- Overridden visit() methods ------------------------------- */
+
+    public Object visit(NodeToken n) throws Exception {
+        return n.toString();
+    }
+
+    /**
+     * f0 -> MainClass()
+     * f1 -> ( TypeDeclaration() )*
+     * f2 -> <EOF>
+     */
+    public Object visit(Goal n) throws Exception {
+        int mainClass = node(n.f0);
+        return node(Ast.PROGRAM, mainClass, list(n.f1));
+    }
+
+    /**
+     * f1 -> Identifier()
+     * f11 -> Identifier()
+     * f14 -> ( VarDeclaration() )*
+     * f15 -> ( Statement() )*
+     */
+    public Object visit(MainClass n) throws Exception {
+        int name = name(n.f1);
+        int locals = list(n.f14);
+        return node(Ast.MAIN_CLASS, name, builder.operands(locals, list(n.f15)));
+    }
+
+    /**
+     * f1 -> Identifier()
+     * f3 -> ( VarDeclaration() )*
+     * f4 -> ( MethodDeclaration() )*
+     */
+    public Object visit(ClassDeclaration n) throws Exception {
+        int name = name(n.f1);
+        int fields = list(n.f3);
+        return node(Ast.CLASS, name, builder.operands(Ast.NO_NAME, fields, list(n.f4)));
+    }
+
+    /**
+     * f1 -> Identifier()
+     * f3 -> Identifier()
+     * f5 -> ( VarDeclaration() )*
+     * f6 -> ( MethodDeclaration() )*
+     */
+    public Object visit(ClassExtendsDeclaration n) throws Exception {
+        int name = name(n.f1);
+        int superName = name(n.f3);
+        int fields = list(n.f5);
+        return node(Ast.CLASS, name, builder.operands(superName, fields, list(n.f6)));
+    }
+
+    /**
+     * f0 -> Type()
+     * f1 -> Identifier()
+     */
+    public Object visit(VarDeclaration n) throws Exception {
+        int type = builder.name((String) n.f0.accept(this));
+        return node(Ast.VAR, name(n.f1), type);
+    }
+
+    /**
+     * f1 -> Type()
+     * f2 -> Identifier()
+     * f4 -> ( FormalParameterList() )?
+     * f7 -> ( VarDeclaration() )*
+     * f8 -> ( Statement() )*
+     * f10 -> Expression()
+     */
+    public Object visit(MethodDeclaration n) throws Exception {
+        int type = builder.name((String) n.f1.accept(this));
+        int name = name(n.f2);
+
+        int mark = builder.mark();
+        if (n.f4.present()) {
+            FormalParameterList list = (FormalParameterList) n.f4.node;
+            builder.push(node(list.f0));
+            for (int i = 0; i < list.f1.f0.size(); i++)
+                builder.push(node(list.f1.f0.elementAt(i)));
+        }
+        int params = builder.list(mark);
+
+        int locals = list(n.f7);
+        int body = list(n.f8);
+        int operands = builder.operands(type, params, locals, body, node(n.f10));
+        return node(Ast.METHOD, name, operands);
+    }
+
+    /**
+     * f0 -> Type()
+     * f1 -> Identifier()
+     */
+    public Object visit(FormalParameter n) throws Exception {
+        int type = builder.name((String) n.f0.accept(this));
+        return node(Ast.VAR, name(n.f1), type);
+    }
+
+    /**
+     * f0 -> ","
+     * f1 -> FormalParameter()
+     */
+    public Object visit(FormalParameterTerm n) throws Exception {
+        return n.f1.accept(this);
+    }
+
+    /**
+     * f0 -> "int"
+     * f1 -> "["
+     * f2 -> "]"
+     */
+    public Object visit(ArrayType n) throws Exception {
+        return "int[]";
+    }
+
+    /**
+     * f0 -> "{"
+     * f1 -> ( Statement() )*
+     * f2 -> "}"
+     */
+    public Object visit(Block n) throws Exception {
+        return node(Ast.BLOCK, list(n.f1));
+    }
+
+    /**
+     * f0 -> Identifier()
+     * f2 -> Expression()
+     */
+    public Object visit(AssignmentStatement n) throws Exception {
+        int name = name(n.f0);
+        return node(Ast.ASSIGN, name, node(n.f2));
+    }
+
+    /**
+     * f0 -> Identifier()
+     * f2 -> Expression()
+     * f5 -> Expression()
+     */
+    public Object visit(ArrayAssignmentStatement n) throws Exception {
+        int name = name(n.f0);
+        int index = node(n.f2);
+        return node(Ast.ARRAY_ASSIGN, name, index, node(n.f5));
+    }
+
+    /**
+     * f2 -> Expression()
+     * f4 -> Statement()
+     * f6 -> Statement()
+     */
+    public Object visit(IfStatement n) throws Exception {
+        int condition = node(n.f2);
+        int thenStmt = node(n.f4);
+        return node(Ast.IF, condition, thenStmt, node(n.f6));
+    }
+
+    /**
+     * f2 -> Expression()
+     * f4 -> Statement()
+     */
+    public Object visit(WhileStatement n) throws Exception {
+        int condition = node(n.f2);
+        return node(Ast.WHILE, condition, node(n.f4));
+    }
+
+    /**
+     * f2 -> Expression()
+     */
+    public Object visit(PrintStatement n) throws Exception {
+        return node(Ast.PRINT, node(n.f2));
+    }
+
+    /**
+     * f0 -> Clause()
+     * f1 -> "&&"
+     * f2 -> Clause()
+     */
+    public Object visit(AndExpression n) throws Exception {
+        int left = node(n.f0);
+        return node(Ast.AND, left, node(n.f2));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     * f1 -> "<"
+     * f2 -> PrimaryExpression()
+     */
+    public Object visit(CompareExpression n) throws Exception {
+        int left = node(n.f0);
+        return node(Ast.LESS, left, node(n.f2));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     * f1 -> "+"
+     * f2 -> PrimaryExpression()
+     */
+    public Object visit(PlusExpression n) throws Exception {
+        int left = node(n.f0);
+        return node(Ast.PLUS, left, node(n.f2));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     * f1 -> "-"
+     * f2 -> PrimaryExpression()
+     */
+    public Object visit(MinusExpression n) throws Exception {
+        int left = node(n.f0);
+        return node(Ast.MINUS, left, node(n.f2));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     * f1 -> "*"
+     * f2 -> PrimaryExpression()
+     */
+    public Object visit(TimesExpression n) throws Exception {
+        int left = node(n.f0);
+        return node(Ast.TIMES, left, node(n.f2));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     * f2 -> PrimaryExpression()
+     */
+    public Object visit(ArrayLookup n) throws Exception {
+        int left = node(n.f0);
+        return node(Ast.ARRAY_LOOKUP, left, node(n.f2));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     */
+    public Object visit(ArrayLength n) throws Exception {
+        return node(Ast.ARRAY_LENGTH, node(n.f0));
+    }
+
+    /**
+     * f0 -> PrimaryExpression()
+     * f2 -> Identifier()
+     * f4 -> ( ExpressionList() )?
+     */
+    public Object visit(MessageSend n) throws Exception {
+        int target = node(n.f0);
+        int name = name(n.f2);
+
+        int mark = builder.mark();
+        if (n.f4.present()) {
+            ExpressionList list = (ExpressionList) n.f4.node;
+            builder.push(node(list.f0));
+            for (int i = 0; i < list.f1.f0.size(); i++)
+                builder.push(node(list.f1.f0.elementAt(i)));
+        }
+        return node(Ast.CALL, name, builder.operands(target, builder.list(mark)));
+    }
+
+    /**
+     * f0 -> ","
+     * f1 -> Expression()
+     */
+    public Object visit(ExpressionTerm n) throws Exception {
+        return n.f1.accept(this);
+    }
+
+    /**
+     * f0 -> IntegerLiteral()
+     * | TrueLiteral()
+     * | FalseLiteral()
+     * | Identifier()
+     * | ThisExpression()
+     * | ArrayAllocationExpression()
+     * | AllocationExpression()
+     * | BracketExpression()
+     */
+    public Object visit(PrimaryExpression n) throws Exception {
+        if (n.f0.choice instanceof Identifier)
+            return node(Ast.IDENT, name((Identifier) n.f0.choice));
+        return n.f0.accept(this);
+    }
+
+    /**
+     * f0 -> <INTEGER_LITERAL>
+     */
+    public Object visit(IntegerLiteral n) throws Exception {
+        return node(Ast.INT_LITERAL, builder.literal(n.f0.toString()));
+    }
+
+    /**
+     * f0 -> "true"
+     */
+    public Object visit(TrueLiteral n) throws Exception {
+        return builder.node(Ast.TRUE, Ast.NO_POS);
+    }
+
+    /**
+     * f0 -> "false"
+     */
+    public Object visit(FalseLiteral n) throws Exception {
+        return builder.node(Ast.FALSE, Ast.NO_POS);
+    }
+
+    /**
+     * f0 -> "this"
+     */
+    public Object visit(ThisExpression n) throws Exception {
+        return builder.node(Ast.THIS, Ast.NO_POS);
+    }
+
+    /**
+     * f3 -> Expression()
+     */
+    public Object visit(ArrayAllocationExpression n) throws Exception {
+        return node(Ast.NEW_ARRAY, node(n.f3));
+    }
+
+    /**
+     * f1 -> Identifier()
+     */
+    public Object visit(AllocationExpression n) throws Exception {
+        return node(Ast.NEW_OBJECT, name(n.f1));
+    }
+
+    /**
+     * f0 -> "!"
+     * f1 -> Clause()
+     */
+    public Object visit(NotExpression n) throws Exception {
+        return node(Ast.NOT, node(n.f1));
+    }
+
+    /**
+     * f0 -> "("
+     * f1 -> Expression()
+     * f2 -> ")"
+     */
+    public Object visit(BracketExpression n) throws Exception {
+        return n.f1.accept(this);
+    }
+}
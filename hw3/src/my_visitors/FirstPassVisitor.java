@@ -1,9 +1,14 @@
 package my_visitors;
 
-import syntaxtree.*;
-import visitor.GJDepthFirst;
+import my_ast.Ast;
+import my_ast.AstDepthFirst;
+import my_events.ClassEvent;
 import my_types.*;
 
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+
 import static my_types.EntryType.*;
 
 
@@ -16,62 +21,105 @@ import static my_types.EntryType.*;
  *   - Unique Variable name
  */
 
-public class FirstPassVisitor extends GJDepthFirst<String, String> {
+public class FirstPassVisitor extends AstDepthFirst<String> {
 
     private int counter = 0;
     private Entry current = null;
     private SymbolTable classes = new SymbolTable("Global");
+    /* Types of the names that are not declared classes, by name. */
+    private final HashMap<Integer, Type> undeclared = new HashMap<>();
 
     public SymbolTable getClasses() {
         return classes;
     }
 
-    public void printDeclarations() {
-        System.out.println("----------------- Declarations -----------------");
-        classes.print("");
+    /* Forget the previous file, so the visitor can be used for another one. */
+    public void reset() {
+        counter = 0;
+        current = null;
+        classes = new SymbolTable("Global");
+        undeclared.clear();
     }
 
-    public void printOffsets() {
-        System.out.println("-------------------- Offsets -------------------");
-        for (Entry entry : classes.getEntries())
-            entry.printOffsets();
+    public void printDeclarations(PrintStream out) {
+        out.println("----------------- Declarations -----------------");
+        classes.print(out, "");
+    }
+
+    public void printOffsets(PrintStream out) {
+        out.println("-------------------- Offsets -------------------");
+        /* Not for the main class. */
+        List<Entry> entries = classes.getEntries();
+        for (int i = 1; i < entries.size(); i++)
+            entries.get(i).printOffsets(out);
+    }
+
+    /* The canonical type of the given name, once all classes are declared. */
+    private Type resolve(int symbol) {
+        Type type = Type.basic(symbol);
+        if (type != null)
+            return type;
+
+        Entry entry = classes.get(symbol);
+        if (entry != null)
+            return ((ClassEntry) entry).getType();
+
+        return undeclared.computeIfAbsent(symbol, Type::undeclared);
+    }
+
+    private void resolveVars(SymbolTable vars) {
+        for (Entry e : vars.getEntries()) {
+            VarEntry ve = (VarEntry) e;
+            if (ve.getType() == null)
+                ve.setType(resolve(ve.getTypeSymbol()));
+        }
+    }
+
+    /* Give every variable and method whose type is a class name its type. */
+    private void resolveTypes() {
+        for (Entry entry : classes.getEntries()) {
+            ClassEntry ce = (ClassEntry) entry;
+            if (ce.getFields() != null)
+                resolveVars(ce.getFields());
+
+            for (Entry e : ce.getMethods().getEntries()) {
+                MethodEntry me = (MethodEntry) e;
+                if (me.getType() == null)
+                    me.setType(resolve(me.getTypeSymbol()));
+                resolveVars(me.getParams());
+                resolveVars(me.getLocals());
+            }
+        }
     }
 
     /* ------------------------------- Overridden visit() methods ------------------------------- */
 
-    public String visit(NodeToken n, String argu) throws Exception {
-        return n.toString();
+    public String visitProgram(int n) throws Exception {
+        accept(ast.mainClass(n));
+        visitAll(ast.classes(n));
+
+        resolveTypes();
+        ClassEntry.numberHierarchy(classes.getEntries());
+
+        /* Classes come after their super classes. */
+        for (Entry entry : classes.getEntries())
+            ((ClassEntry) entry).makeLayout();
+
+        return null;
     }
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "{"
-     * f3 -> "public"
-     * f4 -> "static"
-     * f5 -> "void"
-     * f6 -> "main"
-     * f7 -> "("
-     * f8 -> "String"
-     * f9 -> "["
-     * f10 -> "]"
-     * f11 -> Identifier()
-     * f12 -> ")"
-     * f13 -> "{"
-     * f14 -> ( VarDeclaration() )*
-     * f15 -> ( Statement() )*
-     * f16 -> "}"
-     * f17 -> "}"
-     */
-    public String visit(MainClass n, String argu) throws Exception {
+    public String visitMainClass(int n) throws Exception {
+        ClassEvent event = new ClassEvent();
+        event.begin();
         String mainClassId;
 
-        mainClassId = n.f1.accept(this, argu);
+        mainClassId = ast.name(n);
 
         /* Entry for Main class */
         SymbolTable methods = new SymbolTable(mainClassId);
         ClassEntry mainClass = new ClassEntry(null, counter++,
                 mainClassId, null, methods);
+        mainClass.setMainClass();
         classes.insert(mainClass);
         current = mainClass;
 
@@ -83,128 +131,73 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
         current.insertMethod(mainMethod);
         current = mainMethod;
 
-        n.f11.accept(this, argu);
         /* Ignore main parameter */
 
-        n.f14.accept(this, argu);
-        n.f15.accept(this, argu);
+        visitAll(ast.locals(n));
+        mainClass.resolveMembers();
 
         /* Go to parent Entry x2. */
         current = current.getParent();
         current = current.getParent();
 
+        event.commit(mainClassId, "first_pass");
         return null;
     }
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "{"
-     * f3 -> ( VarDeclaration() )*
-     * f4 -> ( MethodDeclaration() )*
-     * f5 -> "}"
-     */
-    public String visit(ClassDeclaration n, String argu) throws Exception {
-        String id;
-
-        id = n.f1.accept(this, argu);
-        /* SEM_CHECK: Unique Class name. */
-        if (classes.contains(id)) {
-            throw new SemanticException("Class '" + id
-                    + "' is already defined in this program!");
-        }
-
-        /* Entry and SymbolTable for class. */
-        SymbolTable fields = new SymbolTable(id);
-        SymbolTable methods = new SymbolTable(id);
-        ClassEntry ce = new ClassEntry(null, counter++, id,
-                fields, methods);
-        classes.insert(ce);
-        current = ce;
-
-        n.f3.accept(this, argu);
-        n.f4.accept(this, argu);
+    public String visitClass(int n) throws Exception {
+        ClassEvent event = new ClassEvent();
+        event.begin();
+        String classId;
 
-        ce.makeOffsets();
-
-        /* Go to parent Entry. */
-        current = current.getParent();
-
-        return null;
-    }
-
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "extends"
-     * f3 -> Identifier()
-     * f4 -> "{"
-     * f5 -> ( VarDeclaration() )*
-     * f6 -> ( MethodDeclaration() )*
-     * f7 -> "}"
-     */
-    public String visit(ClassExtendsDeclaration n, String argu) throws Exception {
-        String classId, superClassId;
-
-        classId = n.f1.accept(this, argu);
+        classId = ast.name(n);
         /* SEM_CHECK: Unique Class name. */
-        if (classes.contains(classId)) {
+        if (classes.contains(ast.symbol(n))) {
             throw new SemanticException("Class '" + classId
                     + "' is already defined in this program!");
         }
 
-        superClassId = n.f3.accept(this, argu);
-
-        /* SEM_CHECK: Super Class must be declared. */
-        ClassEntry superClass = (ClassEntry) classes.get(superClassId);
-        if (superClass == null) {
-            throw new SemanticException("Class '" + superClassId
-                    + "' hasn't been declared!");
+        ClassEntry superClass = null;
+        int superName = ast.superSymbol(n);
+        if (superName != Ast.NO_NAME) {
+            /* SEM_CHECK: Super Class must be declared. */
+            superClass = (ClassEntry) classes.get(superName);
+            if (superClass == null) {
+                throw new SemanticException("Class '" + ast.superName(n)
+                        + "' hasn't been declared!");
+            }
         }
 
         /* Entry and SymbolTable for class. */
         SymbolTable fields = new SymbolTable(classId);
         SymbolTable methods = new SymbolTable(classId);
-        ClassEntry ce = new ClassEntry(null, counter++, classId,
-                fields, methods, superClass);
+        ClassEntry ce;
+        if (superClass == null)
+            ce = new ClassEntry(null, counter++, classId, fields, methods);
+        else
+            ce = new ClassEntry(null, counter++, classId, fields, methods, superClass);
         classes.insert(ce);
         current = ce;
 
-        n.f5.accept(this, argu);
-        n.f6.accept(this, argu);
-
-        ce.makeOffsets();
+        visitAll(ast.fields(n));
+        visitAll(ast.methods(n));
+        ce.resolveMembers();
 
         /* Go to parent Entry. */
         current = current.getParent();
 
+        event.commit(classId, "first_pass");
         return null;
     }
 
-    /**
-     * f0 -> "public"
-     * f1 -> Type()
-     * f2 -> Identifier()
-     * f3 -> "("
-     * f4 -> ( FormalParameterList() )?
-     * f5 -> ")"
-     * f6 -> "{"
-     * f7 -> ( VarDeclaration() )*
-     * f8 -> ( Statement() )*
-     * f9 -> "return"
-     * f10 -> Expression()
-     * f11 -> ";"
-     * f12 -> "}"
-     */
-    public String visit(MethodDeclaration n, String argu) throws Exception {
+    public String visitMethod(int n) throws Exception {
         String id, type;
 
-        type = n.f1.accept(this, argu);
-        id = n.f2.accept(this, argu);
+        type = ast.type(n);
+        id = ast.name(n);
 
         /* SEM_CHECK: Unique Method name. */
         ClassEntry currentClass = (ClassEntry) current;
-        if (currentClass.getMethods().contains(id)) {
+        if (currentClass.getMethods().contains(ast.symbol(n))) {
             throw new SemanticException("Method '" + id
                     + "' is already defined in this class!");
         }
@@ -216,11 +209,15 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
                 params, locals);
 
         current = me;
-        n.f4.accept(this, argu);
+        int paramList = ast.params(n);
+        for (int i = 0; i < ast.length(paramList); i++)
+            declareParam(ast.item(paramList, i));
         current = current.getParent();
 
         /* SEM_CHECK: Correct Method overriding. */
-        MethodEntry me2 = (MethodEntry) me.getParent().lookup(id, METHOD_ENTRY);
+        MethodEntry me2 = null;
+        if (currentClass.getSuperClass() != null)
+            me2 = (MethodEntry) currentClass.getSuperClass().lookup(me.getSymbol(), METHOD_ENTRY);
         if (me2 != null) {
             if (!me.matches(me2)) {
                 throw new SemanticException("Incorrect override with "
@@ -231,10 +228,7 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
         current.insertMethod(me);
         current = me;
 
-        n.f7.accept(this, argu);
-        n.f8.accept(this, argu);
-
-        n.f10.accept(this, argu);
+        visitAll(ast.locals(n));
 
         /* Go to parent Entry. */
         current = current.getParent();
@@ -242,18 +236,14 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
         return null;
     }
 
-    /**
-     * f0 -> Type()
-     * f1 -> Identifier()
-     */
-    public String visit(FormalParameter n, String argu) throws Exception {
+    private void declareParam(int n) throws SemanticException {
         String id, type;
 
-        type = n.f0.accept(this, argu);
-        id = n.f1.accept(this, argu);
+        type = ast.type(n);
+        id = ast.name(n);
 
         /* SEM_CHECK: Unique Parameter name. */
-        if (current.lookup(id, VAR_ENTRY) != null) {
+        if (current.lookup(ast.symbol(n), VAR_ENTRY) != null) {
             throw new SemanticException("Parameter '" + id
                     + "' is already defined in this scope!");
         }
@@ -261,20 +251,14 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
         /* For every parameter, a new Entry. */
         VarEntry ve = new VarEntry(current, counter++, id, type);
         current.insertParam(ve);
-
-        return null;
     }
 
-    /**
-     * f0 -> Type()
-     * f1 -> Identifier()
-     * f2 -> ";"
-     */
-    public String visit(VarDeclaration n, String argu) throws Exception {
+    /* Fields, and locals of methods. */
+    public String visitVar(int n) throws Exception {
         String id, type;
 
-        type = n.f0.accept(this, argu);
-        id = n.f1.accept(this, argu);
+        type = ast.type(n);
+        id = ast.name(n);
 
         /* For every variable, a new Entry. */
         VarEntry ve = new VarEntry(current, counter++, id, type);
@@ -282,15 +266,15 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
         /* SEM_CHECK: Unique Variable name. */
         if (current.getEntryType() == CLASS_ENTRY) {
             ClassEntry currentClass = (ClassEntry) current;
-            if (currentClass.getFields().contains(id)) {
+            if (currentClass.getFields().contains(ve.getSymbol())) {
                 throw new SemanticException("Field '" + id
                         + "' is already defined in this class!");
             }
             currentClass.insertField(ve);
         } else if (current.getEntryType() == METHOD_ENTRY) {
             MethodEntry currentMethod = (MethodEntry) current;
-            if (currentMethod.getParams().contains(id)
-                    || currentMethod.getLocals().contains(id)) {
+            if (currentMethod.getParams().contains(ve.getSymbol())
+                    || currentMethod.getLocals().contains(ve.getSymbol())) {
                 throw new SemanticException("Variable '" + id
                         + "' is already defined in this scope!");
             }
@@ -299,13 +283,4 @@ public class FirstPassVisitor extends GJDepthFirst<String, String> {
 
         return null;
     }
-
-    /**
-     * f0 -> "int"
-     * f1 -> "["
-     * f2 -> "]"
-     */
-    public String visit(ArrayType n, String argu) throws Exception {
-        return "int[]";
-    }
 }
@@ -1,12 +1,11 @@
 package my_visitors;
 
-import syntaxtree.*;
-import visitor.GJDepthFirst;
-
+import my_ast.Ast;
+import my_ast.AstDepthFirst;
+import my_events.ClassEvent;
 import my_types.*;
 
-import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
 
 import static my_types.EntryType.*;
 
@@ -15,182 +14,115 @@ import static my_types.EntryType.*;
  * SEM_CHECKS:
  *   - If not basic, Type must exist in Global scope.
  *   - New object must have declared type.
+ *
+ * Expressions are visited for their type, see Type, compared by identity.
  */
 
-public class SecondPassVisitor extends GJDepthFirst<String, String> {
+public class SecondPassVisitor extends AstDepthFirst<Type> {
 
     private Entry current = null;
 
-    /* For SEM_CHECK of message send. */
-    private final Stack<ArrayList<VarEntry>> argStack;
+    private SymbolTable classes;
 
-    private final SymbolTable classes;
+    /* Type of the variable of the ASSIGN being visited: assignments do not nest. */
+    private Type assignType;
+    /* Methods of the CALLs whose arguments are being visited, innermost last. */
+    private MethodEntry[] calls = new MethodEntry[16];
+    private int callCount;
 
     public SecondPassVisitor(SymbolTable classes) {
         this.classes = classes;
-        argStack = new Stack<>();
     }
 
-    private boolean isBasicType(String type) {
-        return (type.equals("int") || type.equals("boolean") || type.equals("int[]"));
+    /* Forget the previous file and check the one of the given classes next. */
+    public void reset(SymbolTable classes) {
+        this.classes = classes;
+        current = null;
+        callCount = 0;
     }
 
-    /* ------------------------------- Overridden visit() methods ------------------------------- */
-    public String visit(NodeToken n, String argu) throws Exception {
-        return n.toString();
+    /* SEM_CHECK: Types/Classes must be declared. */
+    private void checkDeclared(Type type) throws SemanticException {
+        if (!type.isBasic() && type.getClassEntry() == null) {
+            throw new SemanticException("Can't resolve type '"
+                    + type.getName() + "'");
+        }
     }
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "{"
-     * f3 -> "public"
-     * f4 -> "static"
-     * f5 -> "void"
-     * f6 -> "main"
-     * f7 -> "("
-     * f8 -> "String"
-     * f9 -> "["
-     * f10 -> "]"
-     * f11 -> Identifier()
-     * f12 -> ")"
-     * f13 -> "{"
-     * f14 -> ( VarDeclaration() )*
-     * f15 -> ( Statement() )*
-     * f16 -> "}"
-     * f17 -> "}"
-     */
-    public String visit(MainClass n, String argu) throws Exception {
-
-        String mainClassId;
-
-        mainClassId = n.f1.accept(this, "decl");
-
-        current = classes.get(mainClassId);
-        current = current.lookup("main", METHOD_ENTRY);
-
-        n.f11.accept(this, "decl");
+    /* The type of a variable used in an expression or a statement. */
+    private Type variableType(int id) throws SemanticException {
+        /* SEM_CHECK: Variables must be declared. */
+        Entry entry = current.lookupForUse(id, VAR_ENTRY);
+        if (entry == null) {
+            throw new SemanticException("Can't resolve variable '"
+                    + SymbolPool.name(id) + "'");
+        }
+        return entry.getType();
+    }
 
-        n.f14.accept(this, argu);
-        n.f15.accept(this, argu);
+    /* ------------------------------- Overridden visit() methods ------------------------------- */
 
-        current = current.getParent();
-        current = current.getParent();
+    public Type visitMainClass(int n) throws Exception {
+        ClassEvent event = new ClassEvent();
+        event.begin();
 
-        return null;
-    }
+        String mainClassId;
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "{"
-     * f3 -> ( VarDeclaration() )*
-     * f4 -> ( MethodDeclaration() )*
-     * f5 -> "}"
-     */
-    public String visit(ClassDeclaration n, String argu) throws Exception {
-        String id;
+        mainClassId = ast.name(n);
 
-        id = n.f1.accept(this, "decl");
-        current = classes.get(id);
+        current = classes.get(ast.symbol(n));
+        current = current.lookup(SymbolPool.MAIN, METHOD_ENTRY);
 
-        n.f3.accept(this, argu);
-        n.f4.accept(this, argu);
+        visitAll(ast.locals(n));
+        visitAll(ast.body(n));
 
+        current = current.getParent();
         current = current.getParent();
 
+        event.commit(mainClassId, "second_pass");
         return null;
     }
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "extends"
-     * f3 -> Identifier()
-     * f4 -> "{"
-     * f5 -> ( VarDeclaration() )*
-     * f6 -> ( MethodDeclaration() )*
-     * f7 -> "}"
-     */
-    public String visit(ClassExtendsDeclaration n, String argu) throws Exception {
+    public Type visitClass(int n) throws Exception {
+        ClassEvent event = new ClassEvent();
+        event.begin();
         String classId;
 
-        classId = n.f1.accept(this, "decl");
-        current = classes.get(classId);
-
-        n.f3.accept(this, "decl");
+        classId = ast.name(n);
+        current = classes.get(ast.symbol(n));
 
-        n.f5.accept(this, argu);
-        n.f6.accept(this, argu);
+        visitAll(ast.fields(n));
+        visitAll(ast.methods(n));
 
         current = current.getParent();
 
+        event.commit(classId, "second_pass");
         return null;
     }
 
-    /**
-     * f0 -> Type()
-     * f1 -> Identifier()
-     * f2 -> ";"
-     */
-    public String visit(VarDeclaration n, String argu) throws Exception {
-        String type = n.f0.accept(this, argu);
-        String id = n.f1.accept(this, "decl");
-
-        if (!isBasicType(type)) {
-            ClassEntry classType = (ClassEntry) classes.get(type);
-            VarEntry ve = (VarEntry) current.lookup(id, VAR_ENTRY);
-            ve.setClassType(classType);
-        }
-
+    /* Fields, parameters and locals. */
+    public Type visitVar(int n) throws Exception {
+        checkDeclared(current.lookup(ast.symbol(n), VAR_ENTRY).getType());
         return null;
     }
 
-    /**
-     * f0 -> "public"
-     * f1 -> Type()
-     * f2 -> Identifier()
-     * f3 -> "("
-     * f4 -> ( FormalParameterList() )?
-     * f5 -> ")"
-     * f6 -> "{"
-     * f7 -> ( VarDeclaration() )*
-     * f8 -> ( Statement() )*
-     * f9 -> "return"
-     * f10 -> Expression()
-     * f11 -> ";"
-     * f12 -> "}"
-     */
-    public String visit(MethodDeclaration n, String argu) throws Exception {
-        String id, retExpr, methodType;
-
-        id = n.f2.accept(this, "decl");
+    public Type visitMethod(int n) throws Exception {
+        Type retExpr, methodType;
 
         ClassEntry currentClass = (ClassEntry) current;
-        current = currentClass.getMethods().get(id);
+        current = currentClass.getMethods().get(ast.symbol(n));
 
-        n.f4.accept(this, argu);
-        n.f7.accept(this, argu);
-        n.f8.accept(this, argu);
+        visitAll(ast.params(n));
+        visitAll(ast.locals(n));
+        visitAll(ast.body(n));
 
-        retExpr = n.f10.accept(this, argu);
+        retExpr = accept(ast.result(n));
         methodType = current.getType();
 
-        /* SEM_CHECK: Return type and return expression must match. */
-        if (isBasicType(retExpr) || isBasicType(methodType)) {
-            if (!methodType.equals(retExpr)) {
-                throw new SemanticException("MethodDeclaration: Return "
-                        + "expression does not match return type.");
-            }
-        } else {
-            /* SEM_CHECK: subtyping */
-            if (!methodType.equals(retExpr)) {
-                ClassEntry ce = (ClassEntry) classes.get(retExpr);
-                if (!ce.inherits(methodType)) {
-                    throw new SemanticException("MethodDeclaration: Return "
-                            + "expression does not match return type.");
-                }
-            }
+        /* SEM_CHECK: Return type and return expression must match, or subtyping. */
+        if (!retExpr.isAssignableTo(methodType)) {
+            throw new SemanticException("MethodDeclaration: Return "
+                    + "expression does not match return type.");
         }
 
         /* Go to parent SymbolTable. */
@@ -199,98 +131,100 @@ public class SecondPassVisitor extends GJDepthFirst<String, String> {
         return null;
     }
 
-    /**
-     * f0 -> Type()
-     * f1 -> Identifier()
+    /*
+     * Checks of the children of statements and expressions, made as soon
+     * as each of them is visited, so that errors are found in source order.
      */
-    public String visit(FormalParameter n, String argu) throws Exception {
-        String type = n.f0.accept(this, argu);
-        String id = n.f1.accept(this, "decl");
-
-        if (!isBasicType(type)) {
-            ClassEntry classType = (ClassEntry) classes.get(type);
-            VarEntry ve = (VarEntry) current.lookup(id, VAR_ENTRY);
-            ve.setClassType(classType);
+    protected void enter(int n) throws Exception {
+        switch (ast.kind(n)) {
+            case Ast.ASSIGN:
+                assignType = variableType(ast.symbol(n));
+                break;
+            case Ast.ARRAY_ASSIGN:
+                /* SEM_CHECK: id must be int[]. */
+                if (variableType(ast.symbol(n)) != Type.INT_ARRAY) {
+                    throw new SemanticException("Identifier in ArrayAssignment must be of type int[]");
+                }
+                break;
         }
-
-        return null;
     }
 
-    /**
-     * f0 -> ArrayType()
-     * | BooleanType()
-     * | IntegerType()
-     * | Identifier()
-     */
-    public String visit(Type n, String argu) throws Exception {
-        return n.f0.accept(this, "typeId");
-    }
+    protected void visited(int n, int i, Type value) throws Exception {
+        /* Only a first child that is an expression is checked right away. */
+        if (i > 0 || value == null)
+            return;
 
-    /**
-     * f0 -> "int"
-     * f1 -> "["
-     * f2 -> "]"
-     */
-    public String visit(ArrayType n, String argu) throws Exception {
-        return "int[]";
+        Type expr = value;
+        switch (ast.kind(n)) {
+            case Ast.ARRAY_ASSIGN:
+                /* SEM_CHECK: Size expression must be int. */
+                if (expr != Type.INT) {
+                    throw new SemanticException("Size expression in ArrayAssignment must be of type int");
+                }
+                break;
+            case Ast.IF:
+                /* SEM_CHECK: Expression must be boolean. */
+                if (expr != Type.BOOLEAN) {
+                    throw new SemanticException("Expression in if statements must"
+                            + " be boolean");
+                }
+                break;
+            case Ast.WHILE:
+                /* SEM_CHECK: Expression must be boolean. */
+                if (expr != Type.BOOLEAN) {
+                    throw new SemanticException("Expression in while statements must"
+                            + " be boolean");
+                }
+                break;
+            case Ast.AND:
+            case Ast.LESS:
+            case Ast.PLUS:
+            case Ast.MINUS:
+            case Ast.TIMES:
+                /* SEM_CHECK: Expression must be boolean for &&, int otherwise. */
+                if (expr != operandType(ast.kind(n))) {
+                    throw new SemanticException(binaryName(ast.kind(n)));
+                }
+                break;
+            case Ast.ARRAY_LOOKUP:
+                /* SEM_CHECK: Expression must be int[]. */
+                if (expr != Type.INT_ARRAY) {
+                    throw new SemanticException("ArrayLookup: Expression must be int[]");
+                }
+                break;
+            case Ast.CALL:
+                if (callCount == calls.length)
+                    calls = Arrays.copyOf(calls, callCount * 2);
+                calls[callCount++] = method(n, expr);
+                break;
+        }
     }
 
-    /**
-     * f0 -> Identifier()
-     * f1 -> "="
-     * f2 -> Expression()
-     * f3 -> ";"
-     */
-    public String visit(AssignmentStatement n, String argu) throws Exception {
-        String id = n.f0.accept(this, argu);
-        String expr = n.f2.accept(this, argu);
+    public Type visitAssign(int n, Type value) throws Exception {
+        Type id = assignType;
+        Type expr = value;
 
         /* SEM_CHECK: Identifier type and expression must match. */
-        if (isBasicType(expr) || isBasicType(id)) {
-            if (!id.equals(expr)) {
+        if (expr.isBasic() || id.isBasic()) {
+            if (id != expr) {
                 throw new SemanticException("AssignmentStatement identifier "
                         + "does not match expression");
             }
         } else {
             /* SEM_CHECK: subtyping */
-            if (!id.equals(expr)) {
-                ClassEntry ce = (ClassEntry) classes.get(expr);
-                if (!ce.inherits(id)) {
-                    throw new SemanticException("AssignmentStatement identifier "
-                            + "does not match expression or wrong subtyping");
-                }
+            if (!expr.isAssignableTo(id)) {
+                throw new SemanticException("AssignmentStatement identifier "
+                        + "does not match expression or wrong subtyping");
             }
         }
 
         return null;
     }
 
-    /**
-     * f0 -> Identifier()
-     * f1 -> "["
-     * f2 -> Expression()
-     * f3 -> "]"
-     * f4 -> "="
-     * f5 -> Expression()
-     * f6 -> ";"
-     */
-    public String visit(ArrayAssignmentStatement n, String argu) throws Exception {
-
-        String id = n.f0.accept(this, argu);
-        /* SEM_CHECK: id must be int[]. */
-        if (!id.equals("int[]")) {
-            throw new SemanticException("Identifier in ArrayAssignment must be of type int[]");
-        }
-
-        String expr1 = n.f2.accept(this, argu);
-        /* SEM_CHECK: Size expression must be int. */
-        if (!expr1.equals("int")) {
-            throw new SemanticException("Size expression in ArrayAssignment must be of type int");
-        }
-
-        String expr2 = n.f5.accept(this, argu);
+    public Type visitArrayAssign(int n, Type index, Type value) throws Exception {
+        Type expr2 = value;
         /* SEM_CHECK: Assignment expression must be int. */
-        if (!expr2.equals("int")) {
+        if (expr2 != Type.INT) {
             throw new SemanticException("Assignment Expression in ArrayAssignment must be of type" +
                     " int");
         }
@@ -298,63 +232,11 @@ public class SecondPassVisitor extends GJDepthFirst<String, String> {
         return null;
     }
 
-    /**
-     * f0 -> "if"
-     * f1 -> "("
-     * f2 -> Expression()
-     * f3 -> ")"
-     * f4 -> Statement()
-     * f5 -> "else"
-     * f6 -> Statement()
-     */
-    public String visit(IfStatement n, String argu) throws Exception {
-
-        String expr = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be boolean. */
-        if (!expr.equals("boolean")) {
-            throw new SemanticException("Expression in if statements must"
-                    + " be boolean");
-        }
-
-        n.f4.accept(this, argu);
-        n.f6.accept(this, argu);
-
-        return null;
-    }
-
-    /**
-     * f0 -> "while"
-     * f1 -> "("
-     * f2 -> Expression()
-     * f3 -> ")"
-     * f4 -> Statement()
-     */
-    public String visit(WhileStatement n, String argu) throws Exception {
-
-        String expr = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be boolean. */
-        if (!expr.equals("boolean")) {
-            throw new SemanticException("Expression in while statements must"
-                    + " be boolean");
-        }
-
-        n.f4.accept(this, argu);
+    public Type visitPrint(int n, Type value) throws Exception {
 
-        return null;
-    }
-
-    /**
-     * f0 -> "System.out.println"
-     * f1 -> "("
-     * f2 -> Expression()
-     * f3 -> ")"
-     * f4 -> ";"
-     */
-    public String visit(PrintStatement n, String argu) throws Exception {
-
-        String expr = n.f2.accept(this, argu);
+        Type expr = value;
         /* SEM_CHECK: Expression in PrintStatement must be only integer. */
-        if (!expr.equals("int")) {
+        if (expr != Type.INT) {
             throw new SemanticException("Expression in PrintStatement "
                     + "must be int.");
         }
@@ -362,353 +244,131 @@ public class SecondPassVisitor extends GJDepthFirst<String, String> {
         return null;
     }
 
-    /**
-     * f0 -> Clause()
-     * f1 -> "&&"
-     * f2 -> Clause()
-     */
-    public String visit(AndExpression n, String argu) throws Exception {
-
-        String expr1 = n.f0.accept(this, argu);
-        /* SEM_CHECK: Expression must be boolean. */
-        if (!expr1.equals("boolean")) {
-            throw new SemanticException("AndExpression");
-        }
-
-        String expr2 = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be boolean. */
-        if (!expr2.equals("boolean")) {
-            throw new SemanticException("AndExpression");
-        }
-
-        return "boolean";
+    /* Type of the operands of a binary expression. */
+    private static Type operandType(int kind) {
+        return kind == Ast.AND ? Type.BOOLEAN : Type.INT;
     }
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "<"
-     * f2 -> PrimaryExpression()
-     */
-    public String visit(CompareExpression n, String argu) throws Exception {
-
-        String expr1 = n.f0.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr1.equals("int")) {
-            throw new SemanticException("CompareExpression");
-        }
-
-        String expr2 = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr2.equals("int")) {
-            throw new SemanticException("CompareExpression");
-        }
-
-        return "boolean";
-    }
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "+"
-     * f2 -> PrimaryExpression()
-     */
-    public String visit(PlusExpression n, String argu) throws Exception {
-
-        String expr1 = n.f0.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr1.equals("int")) {
-            throw new SemanticException("PlusExpression");
-        }
-
-        String expr2 = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr2.equals("int")) {
-            throw new SemanticException("PlusExpression");
-        }
-
-        return "int";
-    }
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "-"
-     * f2 -> PrimaryExpression()
-     */
-    public String visit(MinusExpression n, String argu) throws Exception {
-
-        String expr1 = n.f0.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr1.equals("int")) {
-            throw new SemanticException("MinusExpression");
-        }
-
-        String expr2 = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr2.equals("int")) {
-            throw new SemanticException("MinusExpression");
+    private static String binaryName(int kind) {
+        switch (kind) {
+            case Ast.AND: return "AndExpression";
+            case Ast.LESS: return "CompareExpression";
+            case Ast.PLUS: return "PlusExpression";
+            case Ast.MINUS: return "MinusExpression";
+            default: return "TimesExpression";
         }
-
-        return "int";
     }
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "*"
-     * f2 -> PrimaryExpression()
+    /*
+     * AndExpression, CompareExpression, PlusExpression, MinusExpression and
+     * TimesExpression.
      */
-    public String visit(TimesExpression n, String argu) throws Exception {
-
-        String expr1 = n.f0.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr1.equals("int")) {
-            throw new SemanticException("TimesExpression");
-        }
-
-        String expr2 = n.f2.accept(this, argu);
-        /* SEM_CHECK: Expression must be int. */
-        if (!expr2.equals("int")) {
+    public Type visitBinary(int n, Type left, Type right) throws Exception {
+        int kind = ast.kind(n);
 
-            throw new SemanticException("TimesExpression");
+        Type expr2 = right;
+        /* SEM_CHECK: Expression must be boolean for &&, int otherwise. */
+        if (expr2 != operandType(kind)) {
+            throw new SemanticException(binaryName(kind));
         }
 
-        return "int";
+        return kind == Ast.AND || kind == Ast.LESS ? Type.BOOLEAN : Type.INT;
     }
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "["
-     * f2 -> PrimaryExpression()
-     * f3 -> "]"
-     */
-    public String visit(ArrayLookup n, String argu) throws Exception {
-        String expr1, expr2;
-
-        expr1 = n.f0.accept(this, argu);
-        /* SEM_CHECK: Expression must be int[]. */
-        if (!expr1.equals("int[]")) {
-            throw new SemanticException("ArrayLookup: Expression must be int[]");
-        }
-
-        expr2 = n.f2.accept(this, argu);
+    public Type visitArrayLookup(int n, Type array, Type index) throws Exception {
+        Type expr2 = index;
         /* SEM_CHECK: Index expression must only be int. */
-        if (!expr2.equals("int")) {
+        if (expr2 != Type.INT) {
             throw new SemanticException("ArrayLookup: Index expression must only be int");
         }
 
-        return "int";
+        return Type.INT;
     }
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "."
-     * f2 -> "length"
-     */
-    public String visit(ArrayLength n, String argu) throws Exception {
-        String expr = n.f0.accept(this, argu);
+    public Type visitArrayLength(int n, Type array) throws Exception {
+        Type expr = array;
 
         /* SEM_CHECK: Expression must be int[]. */
-        if (!expr.equals("int[]")) {
+        if (expr != Type.INT_ARRAY) {
             throw new SemanticException("ArrayLength: PrimaryExpression must be int[]");
         }
 
-        return "int";
+        return Type.INT;
     }
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "."
-     * f2 -> Identifier()
-     * f3 -> "("
-     * f4 -> ( ExpressionList() )?
-     * f5 -> ")"
-     */
-    public String visit(MessageSend n, String argu) throws Exception {
-        String type = n.f0.accept(this, argu);
-        String id = n.f2.accept(this, "methodId");
-
+    /* The method a CALL on an object of the given type resolves to. */
+    private MethodEntry method(int n, Type type) throws SemanticException {
         /* SEM_CHECK: Method must belong to class. */
-        MethodEntry me = (MethodEntry) classes.get(type).lookup(id, METHOD_ENTRY);
+        MethodEntry me = (MethodEntry) type.getClassEntry().lookup(ast.symbol(n), METHOD_ENTRY);
         if (me == null) {
-            throw new SemanticException("Class '" + type
-                    + "' can't resolve method '" + id + "'");
+            throw new SemanticException("Class '" + type.getName()
+                    + "' can't resolve method '" + ast.name(n) + "'");
         }
+        return me;
+    }
 
-        argStack.push(new ArrayList<>());
-
-        n.f4.accept(this, argu);
+    /* MessageSend */
+    public Type visitCall(int n, Type target) throws Exception {
+        MethodEntry me = calls[--callCount];
 
-//        System.out.println("MESSAGE_SEND: Arguments:");
-//        for (VarEntry argument: argStack.peek())
-//            argument.print();
+        Type[] arguments = new Type[ast.length(ast.args(n))];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = argument(i);
 
         /* SEM_CHECK: Method call must match method prototype. */
-        if (!me.matchArgs(argStack.pop())) {
+        if (!me.matchArgs(arguments)) {
             throw new SemanticException("Incorrect method call for '"
-                    + id + "'");
+                    + ast.name(n) + "'");
         }
 
-//        System.out.println("MESSAGE_SEND: End Arguments:");
-
         return me.getType();
     }
 
-    /**
-     * f0 -> Expression()
-     * f1 -> ExpressionTail()
-     */
-    public String visit(ExpressionList n, String argu) throws Exception {
-        String expr;
-        VarEntry ve;
-
-        expr = n.f0.accept(this, argu);
-
-        if (isBasicType(expr)) {
-            ve = new VarEntry(null, 0, "dummy", expr);
-            argStack.peek().add(ve);
-        } else {
-            ve = new VarEntry(null, 0, "dummy", expr);
-            ve.setClassType((ClassEntry) classes.get(expr));
-            argStack.peek().add(ve);
-        }
-
-        n.f1.accept(this, argu);
-
-        return null;
+    public Type visitIntLiteral(int n) throws Exception {
+        return Type.INT;
     }
 
-    /**
-     * f0 -> ","
-     * f1 -> Expression()
-     */
-    public String visit(ExpressionTerm n, String argu) throws Exception {
-        String expr;
-        VarEntry ve;
-
-        expr = n.f1.accept(this, argu);
-
-        if (isBasicType(expr)) {
-            ve = new VarEntry(null, 0, "dummy", expr);
-            argStack.peek().add(ve);
-        } else {
-            ve = new VarEntry(null, 0, "dummy", expr);
-            ve.setClassType((ClassEntry) classes.get(expr));
-            argStack.peek().add(ve);
-        }
-
-        return null;
+    public Type visitBoolLiteral(int n) throws Exception {
+        return Type.BOOLEAN;
     }
 
-    /**
-     * f0 -> <INTEGER_LITERAL>
-     */
-    public String visit(IntegerLiteral n, String argu) throws Exception {
-        return "int";
+    public Type visitIdent(int n) throws Exception {
+        return variableType(ast.symbol(n));
     }
 
-    /**
-     * f0 -> "true"
-     */
-    public String visit(TrueLiteral n, String argu) throws Exception {
-        return "boolean";
+    public Type visitThis(int n) throws Exception {
+        return current.getParent().getType();
     }
 
-    /**
-     * f0 -> "false"
-     */
-    public String visit(FalseLiteral n, String argu) throws Exception {
-        return "boolean";
-    }
-
-    /**
-     * f0 -> <IDENTIFIER>
-     */
-    public String visit(Identifier n, String argu) throws Exception {
-        Entry entry;
-        String id = n.f0.accept(this, argu);
-
-        if (argu != null) {
-            if (argu.equals("decl") || argu.equals("methodId")) {
-                return id;
-            } else if (argu.equals("typeId")) {
-                /* SEM_CHECK: Types/Classes must be declared. */
-                if (!classes.contains(id)) {
-                    throw new SemanticException("Can't resolve type '"
-                            + id + "'");
-                } else {
-                    return id;
-                }
-            }
-        }
-
-        if (!isBasicType(id)) {
-            /* SEM_CHECK: Variables must be declared. */
-            entry = current.lookupForUse(id, VAR_ENTRY);
-            if (entry == null) {
-                throw new SemanticException("Can't resolve variable '"
-                        + id + "'");
-            } else {
-                return entry.getType();
-            }
-        }
-
-        return id;
-    }
-
-    /**
-     * f0 -> "this"
-     */
-    public String visit(ThisExpression n, String argu) throws Exception {
-        return current.getParent().getName();
-    }
-
-    /**
-     * f0 -> "new"
-     * f1 -> "int"
-     * f2 -> "["
-     * f3 -> Expression()
-     * f4 -> "]"
-     */
-    public String visit(ArrayAllocationExpression n, String argu) throws Exception {
-        String expr = n.f3.accept(this, argu);
+    public Type visitNewArray(int n, Type size) throws Exception {
+        Type expr = size;
 
         /* SEM_CHECK: Expression must be only integer. */
-        if (!expr.equals("int")) {
+        if (expr != Type.INT) {
             throw new SemanticException("Array Allocation Expression");
         }
 
-        return "int[]";
+        return Type.INT_ARRAY;
     }
 
-    /**
-     * f0 -> "new"
-     * f1 -> Identifier()
-     * f2 -> "("
-     * f3 -> ")"
-     */
-    public String visit(AllocationExpression n, String argu) throws Exception {
-        return n.f1.accept(this, "typeId");
+    public Type visitNewObject(int n) throws Exception {
+        /* SEM_CHECK: New object must have declared type. */
+        Entry entry = classes.get(ast.symbol(n));
+        if (entry == null) {
+            throw new SemanticException("Can't resolve type '"
+                    + ast.name(n) + "'");
+        }
+        return entry.getType();
     }
 
-    /**
-     * f0 -> "!"
-     * f1 -> Clause()
-     */
-    public String visit(NotExpression n, String argu) throws Exception {
-        String clause = n.f1.accept(this, argu);
+    public Type visitNot(int n, Type operand) throws Exception {
+        Type clause = operand;
 
         /* SEM_CHECK: Clause must be boolean. */
-        if (!clause.equals("boolean")) {
+        if (clause != Type.BOOLEAN) {
             throw new SemanticException("NotExpression: Clause must be boolean");
         }
 
-        return "boolean";
-    }
-
-    /**
-     * f0 -> "("
-     * f1 -> Expression()
-     * f2 -> ")"
-     */
-    public String visit(BracketExpression n, String argu) throws Exception {
-        return n.f1.accept(this, argu);
+        return Type.BOOLEAN;
     }
 }
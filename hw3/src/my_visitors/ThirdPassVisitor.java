@@ -2,26 +2,34 @@ package my_visitors;
 
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import my_events.ClassEvent;
+import my_events.MethodEmitEvent;
 import my_types.*;
 
 import static my_types.EntryType.*;
 
-import syntaxtree.*;
-import visitor.GJDepthFirst;
+import my_ast.Ast;
+import my_ast.AstDepthFirst;
 
 
 /*  Third-Pass Visitor: Generate LLVM IR */
 
 
-public class ThirdPassVisitor extends GJDepthFirst<String, String> {
+public class ThirdPassVisitor extends AstDepthFirst<String> {
 
-    private final SymbolTable global;
-    private final FileWriter fileWriter;
+    private SymbolTable global;
+    private FileWriter fileWriter;
     private Integer labelCounter = 0;
     private Integer tempCounter = 0;
+    /* Instructions emitted so far, for the JFR events. */
+    private int instructionCounter = 0;
     private Entry curScope;
+    /* Numbers of the temporaries of the expressions being visited, innermost last. */
+    private int[] temps = new int[16];
+    private int tempCount;
 
     public ThirdPassVisitor(SymbolTable global, FileWriter fileWriter) {
         this.global = global;
@@ -29,19 +37,15 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
         this.curScope = null;
     }
 
-    private String getIRType(String type) {
-        switch (type) {
-            case "int":
-                return "i32";
-            case "boolean":
-                return "i1";
-            case "int[]":
-                return "i32*";
-            case "boolean[]":
-                return "i8*";
-            default:
-                return "i8*";
-        }
+    /* Forget the previous file and emit the IR of the given classes next. */
+    public void reset(SymbolTable global, FileWriter fileWriter) {
+        this.global = global;
+        this.fileWriter = fileWriter;
+        labelCounter = 0;
+        tempCounter = 0;
+        instructionCounter = 0;
+        curScope = null;
+        tempCount = 0;
     }
 
     private String newLabel(String name) {
@@ -49,10 +53,16 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
     }
 
     private String newTemp() {
-        return "%_" + (tempCounter++).toString();
+        return temp(tempCounter++);
+    }
+
+    private String temp(int number) {
+        return "%_" + number;
     }
 
     private void emit(String str) {
+        if (str.startsWith("\t"))
+            instructionCounter++;
         try {
             fileWriter.write(str + "\n");
         } catch (IOException ex) {
@@ -61,20 +71,20 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
     }
 
     private void emitVTables() {
-        ArrayList<Entry> classes = global.getEntries();
-        ArrayList<Entry> methods;
+        List<Entry> classes = global.getEntries();
+        List<Entry> methods;
         ClassEntry ce;
 
         for (int i = 0; i < classes.size(); i++) {
             ce = (ClassEntry) classes.get(i);
-            methods = getTableEntries(ce);
+            methods = ce.getLayout().getVTable();
 
             if (methods.isEmpty() || i == 0) {
                 /* Empty vtable for classes without methods and MainClass. */
                 emit("@." + ce.getName() + "_vtable = global [0 x i8*] []");
                 emit("");
             } else {
-                ArrayList<Entry> params;
+                List<Entry> params;
                 MethodEntry me;
 
                 emit("@." + ce.getName() + "_vtable = global ["
@@ -86,11 +96,11 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
                     StringBuilder str = new StringBuilder();
 
                     str.append("\ti8* bitcast (");
-                    str.append(getIRType(me.getType()));
+                    str.append(me.getType().getIRType());
                     str.append(" (i8*");
 
                     for (Entry pe : params) {
-                        str.append(",").append(getIRType(pe.getType()));
+                        str.append(",").append(pe.getType().getIRType());
                     }
 
                     str.append(")* @");
@@ -112,41 +122,9 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
         }
     }
 
-    private ArrayList<Entry> getTableEntries(ClassEntry ce) {
-
-        if (ce.getSuperClass() == null) {
-            return ce.getMethods().getEntries();
-        } else {
-            ArrayList<Entry> superMethods = getTableEntries(ce.getSuperClass());
-            ArrayList<Entry> methods = ce.getMethods().getEntries();
-            ArrayList<Entry> tableEntries = new ArrayList<>();
-
-            for (int i = 0; i < superMethods.size(); i++) {
-                for (int j = 0; j < methods.size(); j++) {
-                    if (superMethods.get(i).getName().equals(methods.get(j).getName())) {
-                        superMethods.remove(i);
-                        superMethods.add(i, methods.get(j));
-                        methods.remove(j);
-                        break;
-                    }
-                }
-            }
-
-            tableEntries.addAll(superMethods);
-            tableEntries.addAll(methods);
-
-            return tableEntries;
-        }
-    }
-
     /* --------------------- Overridden visit() methods --------------------- */
 
-    /**
-     * f0 -> MainClass()
-     * f1 -> ( TypeDeclaration() )*
-     * f2 -> <EOF>
-     */
-    public String visit(Goal n, String argu) throws Exception {
+    public String visitProgram(int n) throws Exception {
 
         emitVTables();
 
@@ -180,48 +158,32 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
         emit("}");
         emit("");
 
-        n.f0.accept(this, argu);
-        n.f1.accept(this, argu);
+        accept(ast.mainClass(n));
+        visitAll(ast.classes(n));
 
         return null;
     }
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "{"
-     * f3 -> "public"
-     * f4 -> "static"
-     * f5 -> "void"
-     * f6 -> "main"
-     * f7 -> "("
-     * f8 -> "String"
-     * f9 -> "["
-     * f10 -> "]"
-     * f11 -> Identifier()
-     * f12 -> ")"
-     * f13 -> "{"
-     * f14 -> ( VarDeclaration() )*
-     * f15 -> ( Statement() )*
-     * f16 -> "}"
-     * f17 -> "}"
-     */
-    public String visit(MainClass n, String argu) throws Exception {
+    public String visitMainClass(int n) throws Exception {
+        MethodEmitEvent event = new MethodEmitEvent();
+        event.begin();
+        int firstInstruction = instructionCounter;
         String mainClassId;
 
-        mainClassId = n.f1.accept(this, argu);
+        mainClassId = ast.name(n);
 
-        curScope = global.get(mainClassId);
-        curScope = curScope.lookup("main", METHOD_ENTRY);
+        curScope = global.get(ast.symbol(n));
+        curScope = curScope.lookup(SymbolPool.MAIN, METHOD_ENTRY);
         tempCounter = 0;
 
         emit("define i32 @main() {");
 
-        n.f14.accept(this, argu);
-        //n.f15.accept(this, argu);
+        visitAll(ast.locals(n));
+        //visitAll(ast.body(n));
 
         emit("\tret i32 0");
         emit("}\n");
+        event.commit(mainClassId, "main", instructionCounter - firstInstruction);
 
         curScope = curScope.getParent();
         curScope = curScope.getParent();
@@ -229,120 +191,70 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
         return null;
     }
 
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "{"
-     * f3 -> ( VarDeclaration() )*
-     * f4 -> ( MethodDeclaration() )*
-     * f5 -> "}"
-     */
-    public String visit(ClassDeclaration n, String argu) throws Exception {
-        String id;
-
-        id = n.f1.accept(this, argu);
-        curScope = global.get(id);
-
-        //n.f3.accept(this, argu);
-        n.f4.accept(this, argu);
-
-        curScope = curScope.getParent();
-
-        return null;
-    }
-
-    /**
-     * f0 -> "class"
-     * f1 -> Identifier()
-     * f2 -> "extends"
-     * f3 -> Identifier()
-     * f4 -> "{"
-     * f5 -> ( VarDeclaration() )*
-     * f6 -> ( MethodDeclaration() )*
-     * f7 -> "}"
-     */
-    public String visit(ClassExtendsDeclaration n, String argu) throws Exception {
+    public String visitClass(int n) throws Exception {
+        ClassEvent event = new ClassEvent();
+        event.begin();
         String classId;
 
-        classId = n.f1.accept(this, argu);
-        curScope = global.get(classId);
-
-        //n.f3.accept(this, argu);
+        classId = ast.name(n);
+        curScope = global.get(ast.symbol(n));
 
-        //n.f5.accept(this, argu);
-        n.f6.accept(this, argu);
+        //visitAll(ast.fields(n));
+        visitAll(ast.methods(n));
 
         curScope = curScope.getParent();
 
+        event.commit(classId, "third_pass");
         return null;
     }
 
-    /**
-     * f0 -> Type()
-     * f1 -> Identifier()
-     * f2 -> ";"
-     */
-    public String visit(VarDeclaration n, String argu) throws Exception {
+    public String visitVar(int n) throws Exception {
         String id, type;
 
-        type = n.f0.accept(this, argu);
-        id = n.f1.accept(this, argu);
+        type = curScope.lookup(ast.symbol(n), VAR_ENTRY).getType().getIRType();
+        id = ast.name(n);
 
         /* Allocate space in stack for local variable. */
-        emit("\t%" + id + " = alloca " + getIRType(type));
+        emit("\t%" + id + " = alloca " + type);
 
         return null;
     }
 
-    /**
-     * f0 -> "public"
-     * f1 -> Type()
-     * f2 -> Identifier()
-     * f3 -> "("
-     * f4 -> ( FormalParameterList() )?
-     * f5 -> ")"
-     * f6 -> "{"
-     * f7 -> ( VarDeclaration() )*
-     * f8 -> ( Statement() )*
-     * f9 -> "return"
-     * f10 -> Expression()
-     * f11 -> ";"
-     * f12 -> "}"
-     */
-    public String visit(MethodDeclaration n, String argu) throws Exception {
+    public String visitMethod(int n) throws Exception {
+        MethodEmitEvent event = new MethodEmitEvent();
+        event.begin();
+        int firstInstruction = instructionCounter;
         String mId, mType, retExpr;
 
-        mType = n.f1.accept(this, argu);
-        mId = n.f2.accept(this, argu);
+        mId = ast.name(n);
 
-        curScope = curScope.lookup(mId, METHOD_ENTRY);
+        curScope = curScope.lookup(ast.symbol(n), METHOD_ENTRY);
         tempCounter = 0;
         MethodEntry me = (MethodEntry) curScope;
-        ArrayList<Entry> params = me.getParams().getEntries();
+        mType = me.getType().getIRType();
+        List<Entry> params = me.getParams().getEntries();
         StringBuilder str = new StringBuilder();
 
         /* Create method definition line. */
         str.append("define ");
         //TODO correct method type - return expr
-        str.append(getIRType(mType)).append(" ");
+        str.append(mType).append(" ");
         //str.append("void ");
         str.append("@").append(me.getParent().getName());
         str.append(".").append(me.getName());
         str.append("(i8* %this");
         for (Entry pe : params) {
-            str.append(", ").append(getIRType(pe.getType())).append(" ");
+            str.append(", ").append(pe.getType().getIRType()).append(" ");
             str.append("%p.").append(pe.getName());
         }
         str.append(") {");
         emit(str.toString());
 
-        //n.f4.accept(this, argu);      // Probably useless
-
         /* Allocate space in stack for parameters. */
         String pId, pType;
         for (Entry pe : params) {
             pId = pe.getName();
-            pType = getIRType(pe.getType());
+            pType = pe.getType().getIRType();
             emit("\t%" + pId + " = alloca " + pType);
             emit("\tstore " + pType + " %p." + pId + ", "
                     + pType + "* %" + pId);
@@ -350,219 +262,92 @@ public class ThirdPassVisitor extends GJDepthFirst<String, String> {
         emit("");
 
         /* Allocate space in stack for local variables. */
-        n.f7.accept(this, argu);
+        visitAll(ast.locals(n));
         emit("");
 
-        //n.f8.accept(this, argu);
+        //visitAll(ast.body(n));
 
-        retExpr = n.f10.accept(this, argu);
+        retExpr = accept(ast.result(n));
 
-        emit("\tret " + getIRType(mType) + " " + retExpr);
+        emit("\tret " + mType + " " + retExpr);
         emit("}\n");
+        event.commit(me.getParent().getName(), mId, instructionCounter - firstInstruction);
 
         curScope = curScope.getParent();
 
         return null;
     }
 
-    /**
-     * f0 -> Clause()
-     * f1 -> "&&"
-     * f2 -> Clause()
-     */
-    public String visit(AndExpression n, String argu) throws Exception {
-        String temp, clause1, clause2;
-
-        temp = newTemp();
-        clause1 = n.f0.accept(this, argu);
-        clause2 = n.f2.accept(this, argu);
-
-        //TODO Short-circuiting
-        emit("\t" + temp + " = and i1 " + clause1 + ", " + clause2);
-
-        return temp;
-    }
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "<"
-     * f2 -> PrimaryExpression()
+    /*
+     * The temporaries of binary and NOT expressions are numbered before
+     * those of their operands.
      */
-    public String visit(CompareExpression n, String argu) throws Exception {
-        String temp, expr1, expr2;
-
-        temp = newTemp();
-        expr1 = n.f0.accept(this, argu);
-        expr2 = n.f2.accept(this, argu);
-
-        emit("\t" + temp + " = icmp slt i32 " + expr1 + ", " + expr2);
-
-        return temp;
-    }
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "+"
-     * f2 -> PrimaryExpression()
-     */
-    public String visit(PlusExpression n, String argu) throws Exception {
-        String temp, expr1, expr2;
-
-        temp = newTemp();
-        expr1 = n.f0.accept(this, argu);
-        expr2 = n.f2.accept(this, argu);
-
-        emit("\t" + temp + " = add i32 " + expr1 + ", " + expr2);
-
-        return temp;
-    }
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "-"
-     * f2 -> PrimaryExpression()
-     */
-    public String visit(MinusExpression n, String argu) throws Exception {
-        String temp, expr1, expr2;
-
-        temp = newTemp();
-        expr1 = n.f0.accept(this, argu);
-        expr2 = n.f2.accept(this, argu);
-
-        emit("\t" + temp + " = sub i32 " + expr1 + ", " + expr2);
-
-        return temp;
+    protected void enter(int n) throws Exception {
+        int kind = ast.kind(n);
+        if (kind == Ast.NOT || (kind >= Ast.AND && kind <= Ast.TIMES)) {
+            if (tempCount == temps.length)
+                temps = Arrays.copyOf(temps, tempCount * 2);
+            temps[tempCount++] = tempCounter++;
+        }
     }
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "*"
-     * f2 -> PrimaryExpression()
+    /*
+     * AndExpression, CompareExpression, PlusExpression, MinusExpression and
+     * TimesExpression.
      */
-    public String visit(TimesExpression n, String argu) throws Exception {
-        String temp, expr1, expr2;
-
-        temp = newTemp();
-        expr1 = n.f0.accept(this, argu);
-        expr2 = n.f2.accept(this, argu);
-
-        emit("\t" + temp + " = mul i32 " + expr1 + ", " + expr2);
+    public String visitBinary(int n, String left, String right) throws Exception {
+        String temp, expr1, expr2, instruction;
+
+        temp = temp(temps[--tempCount]);
+        expr1 = left;
+        expr2 = right;
+
+        switch (ast.kind(n)) {
+            case Ast.AND:
+                //TODO Short-circuiting
+                instruction = "and i1 ";
+                break;
+            case Ast.LESS:
+                instruction = "icmp slt i32 ";
+                break;
+            case Ast.PLUS:
+                instruction = "add i32 ";
+                break;
+            case Ast.MINUS:
+                instruction = "sub i32 ";
+                break;
+            default:
+                instruction = "mul i32 ";
+                break;
+        }
+        emit("\t" + temp + " = " + instruction + expr1 + ", " + expr2);
 
         return temp;
     }
 
-    //TODO
+    //TODO ArrayLookup, ArrayLength and MessageSend
 
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "["
-     * f2 -> PrimaryExpression()
-     * f3 -> "]"
-     */
-    public String visit(ArrayLookup n, String argu) throws Exception {
-        String _ret = null;
-        n.f0.accept(this, argu);
-        n.f1.accept(this, argu);
-        n.f2.accept(this, argu);
-        n.f3.accept(this, argu);
-        return _ret;
-    }
-
-    //TODO
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "."
-     * f2 -> "length"
-     */
-    public String visit(ArrayLength n, String argu) throws Exception {
-        String _ret = null;
-        n.f0.accept(this, argu);
-        n.f1.accept(this, argu);
-        n.f2.accept(this, argu);
-        return _ret;
-    }
-
-    //TODO
-
-    /**
-     * f0 -> PrimaryExpression()
-     * f1 -> "."
-     * f2 -> Identifier()
-     * f3 -> "("
-     * f4 -> ( ExpressionList() )?
-     * f5 -> ")"
-     */
-    public String visit(MessageSend n, String argu) throws Exception {
-        String _ret = null;
-        n.f0.accept(this, argu);
-        n.f1.accept(this, argu);
-        n.f2.accept(this, argu);
-        n.f3.accept(this, argu);
-        n.f4.accept(this, argu);
-        n.f5.accept(this, argu);
-        return _ret;
-    }
-
-    /**
-     * f0 -> "int"
-     * f1 -> "["
-     * f2 -> "]"
-     */
-    public String visit(ArrayType n, String argu) throws Exception {
-        return "int[]";
-    }
-
-    /**
-     * f0 -> "!"
-     * f1 -> Clause()
-     */
-    public String visit(NotExpression n, String argu) throws Exception {
+    public String visitNot(int n, String operand) throws Exception {
         String temp, clause;
-        temp = newTemp();
-        clause = n.f1.accept(this, argu);
+        temp = temp(temps[--tempCount]);
+        clause = operand;
         emit("\t" + temp + " = sub i1 1, " + clause);
         return temp;
     }
 
-    /**
-     * f0 -> IntegerLiteral()
-     * | TrueLiteral()
-     * | FalseLiteral()
-     * | Identifier()
-     * | ThisExpression()
-     * | ArrayAllocationExpression()
-     * | AllocationExpression()
-     * | BracketExpression()
-     */
-    public String visit(PrimaryExpression n, String argu) throws Exception {
-        return n.f0.accept(this, argu);
-    }
-
-    /**
-     * f0 -> "true"
-     */
-    public String visit(TrueLiteral n, String argu) throws Exception {
-        return "1";
+    public String visitIntLiteral(int n) throws Exception {
+        return ast.literal(n);
     }
 
-    /**
-     * f0 -> "false"
-     */
-    public String visit(FalseLiteral n, String argu) throws Exception {
-        return "0";
+    public String visitBoolLiteral(int n) throws Exception {
+        return ast.kind(n) == Ast.TRUE ? "1" : "0";
     }
 
-    /**
-     * f0 -> "("
-     * f1 -> Expression()
-     * f2 -> ")"
-     */
-    public String visit(BracketExpression n, String argu) throws Exception {
-        return n.f1.accept(this, argu);
+    public String visitIdent(int n) throws Exception {
+        return ast.name(n);
     }
 
-    public String visit(NodeToken n, String argu) throws Exception {
-        return n.toString();
+    public String visitThis(int n) throws Exception {
+        return "this";
     }
 }
@@ -0,0 +1,41 @@
+#!/bin/bash
+#  IR cache test: compile every file of test/course/correct twice through
+#  a fresh cache, in full and in --declarations-only mode, and check that
+#  the first run of a file is a miss and the second one a hit.
+#  Usage: test/test_cache.sh (see "make test-cache")
+
+HW3=$(cd "$(dirname "$0")/.." && pwd)
+SRC=$HW3/src
+FILES=$(ls "$HW3"/test/course/correct/*.java)
+
+OUT=$(mktemp -d)
+trap 'rm -rf "$OUT"' EXIT
+cd "$OUT"
+
+failed=0
+
+# Check that compiling the file with the given options reports the given
+# cache result.
+expect() {
+    local result=$1 file=$2
+    shift 2
+    if ! java -cp "$SRC" Main --no-daemon --cache "$OUT/cache" "$@" "$file" 2>&1 \
+            | grep -q "^IR cache: $result "; then
+        echo "FAIL: expected a $result for $(basename "$file") with options: $*"
+        failed=$((failed + 1))
+    fi
+}
+
+for mode in "" "--declarations-only"; do
+    rm -rf "$OUT/cache"
+    for f in $FILES; do
+        expect miss "$f" $mode
+        expect hit "$f" $mode
+    done
+done
+
+if [ "$failed" -ne 0 ]; then
+    echo "$failed cache checks failed"
+    exit 1
+fi
+echo "All cache checks passed"